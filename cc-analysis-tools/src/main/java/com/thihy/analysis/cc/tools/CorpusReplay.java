@@ -0,0 +1,306 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.HdrHistogram.Histogram;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+
+import com.thihy.analysis.cc.CcAnalyzer;
+import com.thihy.analysis.cc.CcArgs;
+import com.thihy.analysis.cc.CcPendingOutputsPeakAttribute;
+import com.thihy.analysis.cc.CcWordSet;
+
+/**
+ * 语料回放压测工具。加载词典，使用 {@link CcAnalyzer} 在多个线程上回放语料，报告吞吐量、单文档延迟分布、GC时间以及最慢的文档。
+ *
+ * <pre>
+ * java -jar cc-analysis-tools.jar -dict words.txt -corpus corpus.txt [-threads 4] [-iterations 5] [-warmup 2] [-mostTokens] [-slowest 10]
+ * </pre>
+ *
+ * 语料每行为一个文档；iterations/warmup为整个语料被回放的遍数。
+ */
+public final class CorpusReplay {
+	private static final int EXCERPT_LENGTH = 60;
+
+	private final Analyzer analyzer;
+	private final List<String> docs;
+	/** 各文档在语料文件中的行号，为null时以文档序号加1作为行号。 */
+	private final List<Integer> lineNumbers;
+	private final int threads;
+	private final int slowest;
+
+	public CorpusReplay(Analyzer analyzer, List<String> docs, int threads, int slowest) {
+		this(analyzer, docs, null, threads, slowest);
+	}
+
+	/**
+	 * @param lineNumbers 各文档在语料文件中的行号，用于报告最慢的文档
+	 */
+	public CorpusReplay(Analyzer analyzer, List<String> docs, List<Integer> lineNumbers, int threads, int slowest) {
+		if (lineNumbers != null && lineNumbers.size() != docs.size()) {
+			throw new IllegalArgumentException("lineNumbers must have one entry per document (got " + lineNumbers.size() + " for "
+					+ docs.size() + " documents)");
+		}
+		this.analyzer = analyzer;
+		this.docs = docs;
+		this.lineNumbers = lineNumbers;
+		this.threads = threads;
+		this.slowest = slowest;
+	}
+
+	public static void main(String[] args) throws Exception {
+		File dictFile = null;
+		File corpusFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int iterations = 5;
+		int warmup = 2;
+		int slowest = 10;
+		boolean mostTokens = false;
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if ("-dict".equals(arg)) {
+				dictFile = new File(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-corpus".equals(arg)) {
+				corpusFile = new File(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-threads".equals(arg)) {
+				threads = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-iterations".equals(arg)) {
+				iterations = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-warmup".equals(arg)) {
+				warmup = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-slowest".equals(arg)) {
+				slowest = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-mostTokens".equals(arg)) {
+				mostTokens = true;
+			} else {
+				throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+		}
+		if (dictFile == null || corpusFile == null) {
+			System.err.println("Usage: CorpusReplay -dict <file> -corpus <file> [-threads n] [-iterations n] [-warmup n] [-mostTokens] [-slowest n]");
+			System.exit(1);
+		}
+
+		long loadStart = System.nanoTime();
+		CcWordSet wordSet = Dictionaries.load(dictFile);
+		System.out.printf("dictionary: %d words, fst %d bytes, loaded in %d ms%n", wordSet.words.size(), wordSet.fst.ramBytesUsed(),
+				(System.nanoTime() - loadStart) / 1000000);
+		List<Integer> lineNumbers = new ArrayList<>();
+		List<String> docs = Dictionaries.loadCorpus(corpusFile, lineNumbers);
+		System.out.printf("corpus: %d documents%n", docs.size());
+
+		try (Analyzer analyzer = new CcAnalyzer(new CcArgs(wordSet, mostTokens))) {
+			CorpusReplay replay = new CorpusReplay(analyzer, docs, lineNumbers, threads, slowest);
+			if (warmup > 0) {
+				replay.run(warmup);
+			}
+			Result result = replay.run(iterations);
+			result.print(System.out);
+		}
+	}
+
+	public Result run(int iterations) throws InterruptedException {
+		final int total = docs.size() * iterations;
+		final AtomicInteger next = new AtomicInteger();
+		final List<Worker> workers = new ArrayList<>(threads);
+		List<Thread> workerThreads = new ArrayList<>(threads);
+		for (int i = 0; i < threads; ++i) {
+			Worker worker = new Worker(next, total);
+			workers.add(worker);
+			Thread thread = new Thread(worker, "cc-replay-" + i);
+			workerThreads.add(thread);
+		}
+
+		long gcCountBefore = gcCount();
+		long gcTimeBefore = gcTimeMillis();
+		long start = System.nanoTime();
+		for (Thread thread : workerThreads) {
+			thread.start();
+		}
+		for (Thread thread : workerThreads) {
+			thread.join();
+		}
+		long elapsedNanos = System.nanoTime() - start;
+
+		Result result = new Result(elapsedNanos, gcCount() - gcCountBefore, gcTimeMillis() - gcTimeBefore, threads);
+		List<SlowDoc> slowDocs = new ArrayList<>();
+		for (Worker worker : workers) {
+			if (worker.failure != null) {
+				throw new IllegalStateException("replay failed", worker.failure);
+			}
+			result.docs += worker.docs;
+			result.tokens += worker.tokens;
+			result.latencies.add(worker.latencies);
+			slowDocs.addAll(worker.slowDocs);
+		}
+		Collections.sort(slowDocs, Collections.reverseOrder(SlowDoc.BY_LATENCY));
+		result.slowDocs = slowDocs.subList(0, Math.min(slowest, slowDocs.size()));
+		return result;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTimeMillis() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	private final class Worker implements Runnable {
+		private final AtomicInteger next;
+		private final int total;
+		final Histogram latencies = new Histogram(3);
+		final PriorityQueue<SlowDoc> slowDocs = new PriorityQueue<>(Math.max(1, slowest), SlowDoc.BY_LATENCY);
+		long docs;
+		long tokens;
+		Throwable failure;
+
+		Worker(AtomicInteger next, int total) {
+			this.next = next;
+			this.total = total;
+		}
+
+		@Override
+		public void run() {
+			try {
+				int index;
+				while ((index = next.getAndIncrement()) < total) {
+					int docIndex = index % CorpusReplay.this.docs.size();
+					replay(docIndex, CorpusReplay.this.docs.get(docIndex));
+				}
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+
+		private void replay(int docIndex, String doc) throws IOException {
+			long start = System.nanoTime();
+			int docTokens = 0;
+			int pendingOutputsPeak;
+			try (TokenStream ts = analyzer.tokenStream("", doc)) {
+				if (!ts.hasAttribute(CcPendingOutputsPeakAttribute.class)) {
+					throw new IllegalStateException("analysis chain does not end with a CC words filter: " + ts);
+				}
+				CcPendingOutputsPeakAttribute peakAtt = ts.getAttribute(CcPendingOutputsPeakAttribute.class);
+				ts.reset();
+				while (ts.incrementToken()) {
+					docTokens++;
+				}
+				ts.end();
+				pendingOutputsPeak = peakAtt.getPendingOutputsPeak();
+			}
+			long latency = System.nanoTime() - start;
+
+			latencies.recordValue(latency);
+			docs++;
+			tokens += docTokens;
+			if (slowest > 0 && (slowDocs.size() < slowest || slowDocs.peek().latencyNanos < latency)) {
+				if (slowDocs.size() == slowest) {
+					slowDocs.poll();
+				}
+				int lineNumber = lineNumbers == null ? docIndex + 1 : lineNumbers.get(docIndex);
+				slowDocs.add(new SlowDoc(lineNumber, doc, latency, docTokens, pendingOutputsPeak));
+			}
+		}
+	}
+
+	private static final class SlowDoc {
+		static final Comparator<SlowDoc> BY_LATENCY = new Comparator<SlowDoc>() {
+			@Override
+			public int compare(SlowDoc o1, SlowDoc o2) {
+				return Long.compare(o1.latencyNanos, o2.latencyNanos);
+			}
+		};
+
+		final int lineNumber;
+		final String excerpt;
+		final int docLength;
+		final long latencyNanos;
+		final int tokens;
+		final int pendingOutputsPeak;
+
+		SlowDoc(int lineNumber, String doc, long latencyNanos, int tokens, int pendingOutputsPeak) {
+			this.lineNumber = lineNumber;
+			this.excerpt = doc.length() <= EXCERPT_LENGTH ? doc : doc.substring(0, EXCERPT_LENGTH) + "...";
+			this.docLength = doc.length();
+			this.latencyNanos = latencyNanos;
+			this.tokens = tokens;
+			this.pendingOutputsPeak = pendingOutputsPeak;
+		}
+	}
+
+	public static final class Result {
+		final long elapsedNanos;
+		final long gcCount;
+		final long gcTimeMillis;
+		final int threads;
+		final Histogram latencies = new Histogram(3);
+		long docs;
+		long tokens;
+		List<SlowDoc> slowDocs;
+
+		Result(long elapsedNanos, long gcCount, long gcTimeMillis, int threads) {
+			this.elapsedNanos = elapsedNanos;
+			this.gcCount = gcCount;
+			this.gcTimeMillis = gcTimeMillis;
+			this.threads = threads;
+		}
+
+		public void print(PrintStream out) {
+			double seconds = elapsedNanos / 1e9;
+			out.printf("threads: %d, documents: %d, tokens: %d, elapsed: %.3f s%n", threads, docs, tokens, seconds);
+			out.printf("throughput: %.1f docs/s, %.1f tokens/s%n", docs / seconds, tokens / seconds);
+			out.printf("latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f%n", micros(latencies.getValueAtPercentile(50)),
+					micros(latencies.getValueAtPercentile(90)), micros(latencies.getValueAtPercentile(99)),
+					micros(latencies.getValueAtPercentile(99.9)), micros(latencies.getMaxValue()), latencies.getMean() / 1000);
+			out.printf("gc: %d collections, %d ms (%.2f%% of elapsed)%n", gcCount, gcTimeMillis, gcTimeMillis * 100.0 / (elapsedNanos / 1e6));
+			if (!slowDocs.isEmpty()) {
+				out.println("slowest documents:");
+				out.println("  line\tlatency(us)\tchars\ttokens\tpendingOutputsPeak\texcerpt");
+				for (SlowDoc slowDoc : slowDocs) {
+					out.printf("  %d\t%.1f\t%d\t%d\t%d\t%s%n", slowDoc.lineNumber, micros(slowDoc.latencyNanos), slowDoc.docLength, slowDoc.tokens,
+							slowDoc.pendingOutputsPeak, slowDoc.excerpt);
+				}
+			}
+		}
+
+		private static double micros(long nanos) {
+			return nanos / 1000.0;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.thihy.analysis.cc.CcAnalyzer;
+import com.thihy.analysis.cc.CcWordSet;
+
+/**
+ * 工具共用的文件读取方法。词典与语料均为UTF-8文本，每行一个词条/文档。
+ */
+final class Dictionaries {
+
+	private Dictionaries() {
+	}
+
+	/**
+	 * 读取词典文件，忽略空行和以“#”开头的注释行。
+	 */
+	static CcWordSet load(File dictFile) throws IOException {
+		List<String> words = new ArrayList<>();
+		for (String line : Files.readLines(dictFile, Charsets.UTF_8)) {
+			String word = line.trim();
+			if (!word.isEmpty() && !word.startsWith("#")) {
+				words.add(word);
+			}
+		}
+		return CcAnalyzer.buildWordSet(words);
+	}
+
+	/**
+	 * 读取语料文件，每个非空行为一个文档。
+	 */
+	static List<String> loadCorpus(File corpusFile) throws IOException {
+		return loadCorpus(corpusFile, null);
+	}
+
+	/**
+	 * 读取语料文件，每个非空行为一个文档。
+	 *
+	 * @param lineNumbers 不为null时，依次追加各文档在文件中的行号（从1开始），空行被跳过因此行号与文档序号不一定对应
+	 */
+	static List<String> loadCorpus(File corpusFile, List<Integer> lineNumbers) throws IOException {
+		List<String> docs = new ArrayList<>();
+		int lineNumber = 0;
+		for (String line : Files.readLines(corpusFile, Charsets.UTF_8)) {
+			lineNumber++;
+			if (!line.isEmpty()) {
+				docs.add(line);
+				if (lineNumbers != null) {
+					lineNumbers.add(lineNumber);
+				}
+			}
+		}
+		return docs;
+	}
+
+	static String requireArg(String[] args, int index, String name) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("missing value for " + name);
+		}
+		return args[index];
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc.tools;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import com.thihy.analysis.cc.CcWordSet;
+import com.thihy.analysis.cc.CcWordSetStats;
+
+/**
+ * 词典形态统计工具，报告 {@link CcWordSetStats} 的各项统计以及扩展词条最多的Token前缀，用于在词典上线前发现会导致延迟上升的词表。
+ *
+ * <pre>
+ * java -cp cc-analysis-tools.jar com.thihy.analysis.cc.tools.DictionaryStats -dict words.txt [-top 20] [-maxActiveCursors n] [-maxFanOut n]
+ * </pre>
+ *
+ * 指定-maxActiveCursors或-maxFanOut时，超出限制则以退出码2结束，便于在CI中检查词典的变更。
+ */
+public final class DictionaryStats {
+
+	private DictionaryStats() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		File dictFile = null;
+		int top = 20;
+		int maxActiveCursors = Integer.MAX_VALUE;
+		int maxFanOut = Integer.MAX_VALUE;
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if ("-dict".equals(arg)) {
+				dictFile = new File(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-top".equals(arg)) {
+				top = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-maxActiveCursors".equals(arg)) {
+				maxActiveCursors = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else if ("-maxFanOut".equals(arg)) {
+				maxFanOut = Integer.parseInt(Dictionaries.requireArg(args, ++i, arg));
+			} else {
+				throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+		}
+		if (dictFile == null) {
+			System.err.println("Usage: DictionaryStats -dict <file> [-top n] [-maxActiveCursors n] [-maxFanOut n]");
+			System.exit(1);
+		}
+
+		CcWordSet wordSet = Dictionaries.load(dictFile);
+		CcWordSetStats stats = CcWordSetStats.compute(wordSet, top);
+		print(System.out, wordSet, stats);
+
+		boolean failed = false;
+		if (stats.getWorstCaseActiveCursors() > maxActiveCursors) {
+			System.err.printf("worst-case active cursors %d exceeds limit %d%n", stats.getWorstCaseActiveCursors(), maxActiveCursors);
+			failed = true;
+		}
+		CcWordSetStats.Prefix maxFanOutPrefix = stats.getMaxFanOutPrefix();
+		if (maxFanOutPrefix != null && maxFanOutPrefix.getFanOut() > maxFanOut) {
+			System.err.printf("fan-out %d of prefix [%s] exceeds limit %d%n", maxFanOutPrefix.getFanOut(), maxFanOutPrefix, maxFanOut);
+			failed = true;
+		}
+		if (failed) {
+			System.exit(2);
+		}
+	}
+
+	static void print(PrintStream out, CcWordSet wordSet, CcWordSetStats stats) {
+		out.printf("entries: %d, fst %d bytes%n", stats.getEntryCount(), wordSet.fst.ramBytesUsed());
+		out.printf("tokens per entry: max=%d mean=%.2f%n", stats.getMaxTokensPerEntry(), stats.getAverageTokensPerEntry());
+		out.print("entries by token count:");
+		for (int tokenCount = 1; tokenCount <= stats.getMaxTokensPerEntry(); ++tokenCount) {
+			out.printf(" %d=%d", tokenCount, stats.getEntriesWithTokens(tokenCount));
+		}
+		out.println();
+		out.printf("single-token entries: %d (%d also prefixes of longer entries)%n", stats.getSingleTokenEntries(),
+				stats.getSingleTokenPrefixEntries());
+		out.printf("entries that are prefixes of longer entries: %d%n", stats.getPrefixEntries());
+		out.printf("distinct first tokens: %d, shared token prefixes: %d%n", stats.getFirstTokenFanOut(), stats.getPrefixCount());
+		out.printf("max code points per token: %d%n", stats.getMaxCodePointsPerToken());
+		out.printf("worst case: %d active cursors, %d fst steps per input token%n", stats.getWorstCaseActiveCursors(),
+				stats.getWorstCaseFstStepsPerToken());
+		if (stats.getMaxFanOutPrefix() != null) {
+			out.printf("max fan-out: %d after [%s]%n", stats.getMaxFanOutPrefix().getFanOut(), stats.getMaxFanOutPrefix());
+		}
+		if (!stats.getTopPrefixes().isEmpty()) {
+			out.println("top prefixes:");
+			out.println("  extensions\tfanOut\tisEntry\tprefix");
+			for (CcWordSetStats.Prefix prefix : stats.getTopPrefixes()) {
+				out.printf("  %d\t%d\t%s\t%s%n", prefix.getExtensions(), prefix.getFanOut(), prefix.isEntry(), prefix);
+			}
+		}
+	}
+}
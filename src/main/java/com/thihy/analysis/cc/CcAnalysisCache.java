@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * 分词结果缓存。以（分析器、字段名、输入文本）为键，缓存分词后的Token序列，命中时直接重放，不再进行分词。
+ * 重放的Token带有原先的 {@link CcTermFrequencyAttribute} 及 {@link CcPendingOutputsPeakAttribute} ，其它自定义属性不会保留。
+ * <p>
+ * 缓存按照占用内存的估算值进行淘汰。分析器以实例身份参与比较，其 {@link CcArgs} （包括词典）是不可变的，因此词典切换（即换用新的分析器）后
+ * 旧的结果不会被返回，多个配置不同的分析器也可以共享同一个缓存。旧分析器的结果随淘汰逐渐移出，在此之前旧分析器仍被缓存引用；
+ * 需要立即释放时调用 {@link #invalidateAll()} 。
+ */
+public final class CcAnalysisCache {
+	/** 超过此数量Token的结果不进入缓存，避免个别超长文本挤占整个缓存。 */
+	public static final int DEFAULT_MAX_TOKENS_PER_ENTRY = 1024;
+
+	private final Cache<Key, CcTokenBuffer> cache;
+	private final int maxTokensPerEntry;
+
+	public CcAnalysisCache(long maxBytes) {
+		this(maxBytes, DEFAULT_MAX_TOKENS_PER_ENTRY);
+	}
+
+	public CcAnalysisCache(long maxBytes, int maxTokensPerEntry) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be > 0 (got " + maxBytes + ")");
+		}
+		if (maxTokensPerEntry <= 0) {
+			throw new IllegalArgumentException("maxTokensPerEntry must be > 0 (got " + maxTokensPerEntry + ")");
+		}
+		this.maxTokensPerEntry = maxTokensPerEntry;
+		this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<Key, CcTokenBuffer>() {
+			@Override
+			public int weigh(Key key, CcTokenBuffer value) {
+				long weight = key.ramBytesUsed() + value.ramBytesUsed();
+				return (int) Math.min(Integer.MAX_VALUE, weight);
+			}
+		}).recordStats().build();
+	}
+
+	/**
+	 * 返回text的分词结果。命中缓存时直接重放，否则使用analyzer进行分词并缓存结果。
+	 *
+	 * @param analyzer 是缓存键的一部分，对同样的输入应总是给出同样的结果
+	 */
+	public TokenStream tokenStream(Analyzer analyzer, String fieldName, String text) throws IOException {
+		Key key = new Key(analyzer, fieldName, text);
+		CcTokenBuffer tokens = cache.getIfPresent(key);
+		if (tokens == null) {
+			tokens = new CcTokenBuffer();
+			try (TokenStream ts = analyzer.tokenStream(fieldName, text)) {
+				tokens.fill(ts);
+			}
+			if (tokens.size() <= maxTokensPerEntry) {
+				tokens.trim();
+				cache.put(key, tokens);
+			}
+		}
+		return tokens.newTokenStream();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	private static final class Key {
+		private final Analyzer analyzer;
+		private final String fieldName;
+		private final String text;
+		private final int hashCode;
+
+		Key(Analyzer analyzer, String fieldName, String text) {
+			this.analyzer = analyzer;
+			this.fieldName = fieldName;
+			this.text = text;
+			this.hashCode = 31 * (31 * System.identityHashCode(analyzer) + fieldName.hashCode()) + text.hashCode();
+		}
+
+		long ramBytesUsed() {
+			return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+					+ RamUsageEstimator.NUM_BYTES_INT + 2 * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+					+ (fieldName.length() + text.length()) * RamUsageEstimator.NUM_BYTES_CHAR;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return analyzer == other.analyzer && fieldName.equals(other.fieldName) && text.equals(other.text);
+		}
+	}
+}
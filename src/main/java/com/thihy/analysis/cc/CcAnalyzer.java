@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cjk.CJKWidthFilter;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.CharsRefBuilder;
+
+/**
+ * 标准的CC分析链： <code>StandardTokenizer</code> -&gt; <code>LowerCaseFilter</code> -&gt; <code>CJKWidthFilter</code> -&gt;
+ * {@link CcWordsFilter} 。
+ * <p>
+ * {@link #tokenStream(String, Reader)} 返回的TokenStream即为 {@link CcWordsFilter} 本身，可以由此获取匹配过程的统计信息。
+ * 指定executor时则使用 {@link CcParallelWordsFilter} 。
+ */
+public final class CcAnalyzer extends Analyzer {
+	private final CcArgs args;
+	private final ExecutorService executor;
+	private final int minChunkTokens;
+	private final int minParallelTokens;
+
+	public CcAnalyzer(CcArgs args) {
+		this.args = args;
+		this.executor = null;
+		this.minChunkTokens = 0;
+		this.minParallelTokens = 0;
+	}
+
+	/**
+	 * 使用 {@link CcParallelWordsFilter} 并行分析大文档，少于 {@link CcParallelWordsFilter#DEFAULT_MIN_PARALLEL_TOKENS} 个Token的文档串行分析。
+	 */
+	public CcAnalyzer(CcArgs args, ExecutorService executor, int minChunkTokens) {
+		this(args, executor, minChunkTokens, CcParallelWordsFilter.DEFAULT_MIN_PARALLEL_TOKENS);
+	}
+
+	/**
+	 * 使用 {@link CcParallelWordsFilter} 并行分析大文档，少于minParallelTokens个Token的文档串行分析。
+	 */
+	public CcAnalyzer(CcArgs args, ExecutorService executor, int minChunkTokens, int minParallelTokens) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+		this.args = args;
+		this.executor = executor;
+		this.minChunkTokens = minChunkTokens;
+		this.minParallelTokens = minParallelTokens;
+	}
+
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+		// 启用慢分析日志时截留输入开头的原文作为摘要，reader随每个文档替换
+		final CcSlowLogExcerpt.CaptureReader captureReader = args.slowLog == null ? null : new CcSlowLogExcerpt.CaptureReader(reader,
+				2 * args.slowLog.excerptLength());
+		StandardTokenizer tokenizer = new StandardTokenizer(captureReader == null ? reader : captureReader);
+		TokenStream tokenStream = tokenizer;
+		tokenStream = new LowerCaseFilter(tokenStream);
+		tokenStream = new CJKWidthFilter(tokenStream);
+		if (executor == null) {
+			CcWordsFilter filter = new CcWordsFilter(tokenStream, args);
+			filter.setSlowLogExcerptReader(captureReader);
+			tokenStream = filter;
+		} else {
+			CcParallelWordsFilter filter = new CcParallelWordsFilter(tokenStream, args, executor, minChunkTokens, minParallelTokens);
+			filter.setSlowLogExcerptReader(captureReader);
+			tokenStream = filter;
+		}
+		if (captureReader == null) {
+			return new TokenStreamComponents(tokenizer, tokenStream);
+		}
+		return new TokenStreamComponents(tokenizer, tokenStream) {
+
+			@Override
+			protected void setReader(Reader reader) throws IOException {
+				captureReader.setInput(reader);
+				super.setReader(captureReader);
+			}
+		};
+	}
+
+	/**
+	 * 构建词典时使用的分析器，其归一化与 {@link CcAnalyzer} 一致。
+	 */
+	public static Analyzer newWordSetAnalyzer() {
+		return new Analyzer() {
+
+			@Override
+			protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+				StandardTokenizer tokenizer = new StandardTokenizer(reader);
+				TokenStream tokenStream = tokenizer;
+				tokenStream = new LowerCaseFilter(tokenStream);
+				tokenStream = new CJKWidthFilter(tokenStream);
+				return new TokenStreamComponents(tokenizer, tokenStream);
+			}
+		};
+	}
+
+	/**
+	 * 使用 {@link #newWordSetAnalyzer()} 构建词典，分析后为空或重复的词条将被忽略。
+	 */
+	public static CcWordSet buildWordSet(Iterable<String> words) throws IOException {
+		CcWordSet.Builder builder = new CcWordSet.Builder();
+		try (Analyzer analyzer = newWordSetAnalyzer()) {
+			CharsRefBuilder textCharsRefBuilder = new CharsRefBuilder();
+			for (String word : words) {
+				CharsRef analyzedText = analyzeWord(analyzer, word);
+				if (analyzedText == null) {
+					continue;
+				}
+				textCharsRefBuilder.clear();
+				textCharsRefBuilder.append(word);
+				builder.addIfAbsent(analyzedText, textCharsRefBuilder.get());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 将词条分析为词典的输入形式：Token之间以 {@link CcWordSet#WORD_SEPARATOR} 分隔，并以 {@link CcWordSet#WORD_END} 结尾。
+	 *
+	 * @return 分析后没有Token时返回null
+	 */
+	public static CharsRef analyzeWord(Analyzer analyzer, String word) throws IOException {
+		CharsRefBuilder charsRefBuilder = new CharsRefBuilder();
+		try (TokenStream ts = analyzer.tokenStream("", word)) {
+			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				int length = termAtt.length();
+				if (length == 0) {
+					throw new IllegalArgumentException("term: " + word + " analyzed to a zero-length token");
+				}
+				charsRefBuilder.grow(charsRefBuilder.length() + length + 1); /* current + word + separator */
+				if (charsRefBuilder.length() > 0) {
+					charsRefBuilder.append(CcWordSet.WORD_SEPARATOR);
+				}
+				charsRefBuilder.append(termAtt);
+			}
+			ts.end();
+		}
+		if (charsRefBuilder.length() == 0) {
+			return null;
+		}
+		charsRefBuilder.append(CcWordSet.WORD_END);
+		return charsRefBuilder.get();
+	}
+}
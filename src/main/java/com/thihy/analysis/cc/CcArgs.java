@@ -17,13 +17,54 @@
 package com.thihy.analysis.cc;
 
 public final class CcArgs {
+	/** 词典，使用分片词典时为null。 */
 	public final CcWordSet wordSet;
+	/** 分片词典，与wordSet二者有且只有一个不为null。 */
+	public final CcShardedWordSet shardedWordSet;
 	public final boolean mostTokens;
+	/** 匹配词典时对输入Token进行的码点折叠，为null时不折叠。 */
+	public final CcCodePointFolding folding;
+	/**
+	 * 去重模式：只输出CC类型的Token，每个词条在一个文档中只输出一次，并通过 {@link CcTermFrequencyAttribute} 给出其出现次数。
+	 * 适用于只需要判断“文档是否包含某词”的字段。此模式下mostTokens无效。
+	 */
+	public final boolean distinctWords;
+	/** 慢分析日志，为null时不记录。 */
+	public final CcSlowLog slowLog;
 
 	public CcArgs(CcWordSet wordSet, boolean mostTokens) {
+		this(wordSet, mostTokens, null);
+	}
+
+	public CcArgs(CcWordSet wordSet, boolean mostTokens, CcCodePointFolding folding) {
+		this(wordSet, mostTokens, folding, false);
+	}
+
+	public CcArgs(CcWordSet wordSet, boolean mostTokens, CcCodePointFolding folding, boolean distinctWords) {
+		this(wordSet, mostTokens, folding, distinctWords, null);
+	}
+
+	public CcArgs(CcWordSet wordSet, boolean mostTokens, CcCodePointFolding folding, boolean distinctWords, CcSlowLog slowLog) {
+		this(wordSet, null, mostTokens, folding, distinctWords, slowLog);
+	}
+
+	public CcArgs(CcShardedWordSet shardedWordSet, boolean mostTokens, CcCodePointFolding folding, boolean distinctWords,
+			CcSlowLog slowLog) {
+		this(null, shardedWordSet, mostTokens, folding, distinctWords, slowLog);
+	}
+
+	private CcArgs(CcWordSet wordSet, CcShardedWordSet shardedWordSet, boolean mostTokens, CcCodePointFolding folding,
+			boolean distinctWords, CcSlowLog slowLog) {
 		super();
+		if ((wordSet == null) == (shardedWordSet == null)) {
+			throw new IllegalArgumentException("exactly one of wordSet and shardedWordSet must be given");
+		}
 		this.wordSet = wordSet;
+		this.shardedWordSet = shardedWordSet;
 		this.mostTokens = mostTokens;
+		this.folding = folding;
+		this.distinctWords = distinctWords;
+		this.slowLog = slowLog;
 	}
 
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 码点折叠表，在 {@link CcWordsFilter} 遍历FST时逐个码点地进行归一化，从而无需在其之前放置 <code>LowerCaseFilter</code> 、
+ * <code>CJKWidthFilter</code> 来改写每个Token。
+ * <p>
+ * 折叠的顺序为：小写 -&gt; 全角/半角 -&gt; 用户映射，与 <code>LowerCaseFilter</code> 、 <code>CJKWidthFilter</code> 的串联顺序一致。
+ * 注意：折叠只作用于词典匹配，非CC类型的Token仍按原样输出；且不支持 <code>CJKWidthFilter</code> 中将半角浊音符号合并到前一字符的处理。
+ */
+public final class CcCodePointFolding {
+	private static final int BMP_SIZE = Character.MAX_VALUE + 1;
+
+	/** 半角片假名 U+FF65 ~ U+FF9F 对应的全角字符，与 <code>CJKWidthFilter</code> 一致。 */
+	private static final char[] KANA_NORM = new char[] { 0x30fb, 0x30f2, 0x30a1, 0x30a3, 0x30a5, 0x30a7, 0x30a9, 0x30e3, 0x30e5,
+			0x30e7, 0x30c3, 0x30fc, 0x30a2, 0x30a4, 0x30a6, 0x30a8, 0x30aa, 0x30ab, 0x30ad, 0x30af, 0x30b1, 0x30b3, 0x30b5, 0x30b7,
+			0x30b9, 0x30bb, 0x30bd, 0x30bf, 0x30c1, 0x30c4, 0x30c6, 0x30c8, 0x30ca, 0x30cb, 0x30cc, 0x30cd, 0x30ce, 0x30cf, 0x30d2,
+			0x30d5, 0x30d8, 0x30db, 0x30de, 0x30df, 0x30e0, 0x30e1, 0x30e2, 0x30e4, 0x30e6, 0x30e8, 0x30e9, 0x30ea, 0x30eb, 0x30ec,
+			0x30ed, 0x30ef, 0x30f3, 0x3099, 0x309A };
+
+	/** BMP范围内预先计算好的折叠结果。 */
+	private final char[] bmpTable;
+	private final boolean lowerCase;
+	private final boolean width;
+	private final Map<Integer, Integer> supplementaryMapping;
+
+	private CcCodePointFolding(char[] bmpTable, boolean lowerCase, boolean width, Map<Integer, Integer> supplementaryMapping) {
+		this.bmpTable = bmpTable;
+		this.lowerCase = lowerCase;
+		this.width = width;
+		this.supplementaryMapping = supplementaryMapping;
+	}
+
+	public int fold(int codePoint) {
+		if (codePoint < BMP_SIZE) {
+			return bmpTable[codePoint];
+		}
+		return foldSupplementary(codePoint);
+	}
+
+	private int foldSupplementary(int codePoint) {
+		if (lowerCase) {
+			codePoint = Character.toLowerCase(codePoint);
+		}
+		if (supplementaryMapping.isEmpty()) {
+			return codePoint;
+		}
+		Integer mapped = supplementaryMapping.get(codePoint);
+		return mapped == null ? codePoint : mapped;
+	}
+
+	private static int foldWidth(int codePoint) {
+		if (codePoint >= 0xFF01 && codePoint <= 0xFF5E) {
+			return codePoint - 0xFEE0;
+		}
+		if (codePoint >= 0xFF65 && codePoint <= 0xFF9F) {
+			return KANA_NORM[codePoint - 0xFF65];
+		}
+		return codePoint;
+	}
+
+	@Override
+	public String toString() {
+		return "CcCodePointFolding [lowerCase=" + lowerCase + ", width=" + width + "]";
+	}
+
+	public static class Builder {
+		private boolean lowerCase;
+		private boolean width;
+		private final Map<Integer, Integer> mapping = new HashMap<>();
+
+		public Builder() {
+		}
+
+		/** 与 <code>LowerCaseFilter</code> 相同的小写折叠。 */
+		public Builder lowerCase() {
+			this.lowerCase = true;
+			return this;
+		}
+
+		/** 与 <code>CJKWidthFilter</code> 相同的全角ASCII转半角、半角片假名转全角（不含浊音符号合并）。 */
+		public Builder width() {
+			this.width = true;
+			return this;
+		}
+
+		/** 用户自定义映射，在小写和全角/半角折叠之后应用。 */
+		public Builder map(int fromCodePoint, int toCodePoint) {
+			if (!Character.isValidCodePoint(fromCodePoint)) {
+				throw new IllegalArgumentException("invalid code point: " + fromCodePoint);
+			}
+			if (!Character.isValidCodePoint(toCodePoint) || toCodePoint >= BMP_SIZE && fromCodePoint < BMP_SIZE) {
+				throw new IllegalArgumentException("invalid mapping: " + fromCodePoint + " -> " + toCodePoint);
+			}
+			if (toCodePoint <= CcWordSet.WORD_END) {
+				throw new IllegalArgumentException("must not map to reserved code point: " + toCodePoint);
+			}
+			mapping.put(fromCodePoint, toCodePoint);
+			return this;
+		}
+
+		public CcCodePointFolding build() {
+			char[] bmpTable = new char[BMP_SIZE];
+			for (int codePoint = 0; codePoint < BMP_SIZE; ++codePoint) {
+				int folded = codePoint;
+				if (lowerCase) {
+					folded = Character.toLowerCase(folded);
+				}
+				if (width) {
+					folded = foldWidth(folded);
+				}
+				Integer mapped = mapping.get(folded);
+				if (mapped != null) {
+					folded = mapped;
+				}
+				bmpTable[codePoint] = (char) folded;
+			}
+			Map<Integer, Integer> supplementaryMapping = new HashMap<>();
+			for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+				if (entry.getKey() >= BMP_SIZE) {
+					supplementaryMapping.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return new CcCodePointFolding(bmpTable, lowerCase, width, supplementaryMapping);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * 记录一个文档中出现过的词条序号及其次数，按首次出现的顺序保存。
+ * <p>
+ * 使用开放地址法的哈希表定位序号，其余信息保存在按插入顺序排列的数组中。 {@link #clear()} 只清理用过的槽位，
+ * 故而内存占用和清理代价都只与文档中不同词条的数量相关，而与词典大小无关，实例可以在文档间复用。
+ */
+final class CcOrdCounter {
+	private static final int EMPTY = -1;
+
+	/** 哈希槽位，保存条目在下列数组中的下标。 */
+	private int[] slots;
+	private int mask;
+
+	private int[] ords = new int[8];
+	private int[] counts = new int[8];
+	private int[] startOffsets = new int[8];
+	private int[] endOffsets = new int[8];
+	private int size;
+
+	CcOrdCounter() {
+		slots = new int[16];
+		Arrays.fill(slots, EMPTY);
+		mask = slots.length - 1;
+	}
+
+	/**
+	 * 记录ord出现一次；首次出现时同时记录其偏移量。
+	 */
+	void add(int ord, int startOffset, int endOffset) {
+		int slot = findSlot(ord);
+		int index = slots[slot];
+		if (index != EMPTY) {
+			counts[index]++;
+			return;
+		}
+		if (size == ords.length) {
+			int newLength = ArrayUtil.oversize(size + 1, 4);
+			ords = Arrays.copyOf(ords, newLength);
+			counts = Arrays.copyOf(counts, newLength);
+			startOffsets = Arrays.copyOf(startOffsets, newLength);
+			endOffsets = Arrays.copyOf(endOffsets, newLength);
+		}
+		ords[size] = ord;
+		counts[size] = 1;
+		startOffsets[size] = startOffset;
+		endOffsets[size] = endOffset;
+		slots[slot] = size;
+		size++;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+	}
+
+	private int findSlot(int ord) {
+		int slot = mix(ord) & mask;
+		while (true) {
+			int index = slots[slot];
+			if (index == EMPTY || ords[index] == ord) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void rehash(int newCapacity) {
+		slots = new int[newCapacity];
+		Arrays.fill(slots, EMPTY);
+		mask = newCapacity - 1;
+		for (int index = 0; index < size; ++index) {
+			slots[findSlot(ords[index])] = index;
+		}
+	}
+
+	private static int mix(int ord) {
+		int h = ord * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	int size() {
+		return size;
+	}
+
+	int ord(int index) {
+		return ords[index];
+	}
+
+	int count(int index) {
+		return counts[index];
+	}
+
+	int startOffset(int index) {
+		return startOffsets[index];
+	}
+
+	int endOffset(int index) {
+		return endOffsets[index];
+	}
+
+	void clear() {
+		// 按插入的逆序清理：条目的探测链只会经过比它更早插入的条目，逆序清理时这些槽位仍被占用，故而能找到正确的槽位。
+		for (int index = size - 1; index >= 0; --index) {
+			slots[findSlot(ords[index])] = EMPTY;
+		}
+		size = 0;
+	}
+}
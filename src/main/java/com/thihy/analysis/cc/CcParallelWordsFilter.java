@@ -0,0 +1,397 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.CharsRef;
+
+/**
+ * 并行版本的 {@link CcWordsFilter} ，用于超大文档。
+ * <p>
+ * 先读取全部输入Token，然后在安全的切分点处将其切分为若干块：切分点是 {@link CcWordsFilter} 会结束所有未完成匹配的位置（即相邻Token之间存在断层），
+ * 任何匹配都不可能跨越这样的位置。各块在executor上分别使用 {@link CcWordsFilter} 匹配，最后按顺序拼接。由于Token自带位置增量和偏移量，
+ * 拼接后的结果与串行分析完全一致。
+ * <p>
+ * 少于minParallelTokens个Token或只有一块的文档不交给executor，而是由一个复用的 {@link CcWordsFilter} 在当前线程中直接输出，不再缓存其结果。
+ * 交给executor的文档各自使用独立的输入Buffer，因此 {@link #reset()} 或 {@link #close()} 时无需等待已取消的任务结束。
+ * 不支持 {@link CcArgs#distinctWords} 。
+ * <p>
+ * 启用 {@link CcArgs#slowLog} 时，各块的 {@link CcWordsFilter} 只统计不记录，由此过滤器汇总后每个文档记录一次：耗时为各线程所用时间之和（不含等待），
+ * FST查找次数、Token数量以及热点前缀为各块之和，pendingOutputs的峰值取各块的最大值。
+ */
+public final class CcParallelWordsFilter extends TokenFilter {
+	/** 默认每块最少的Token数量。 */
+	public static final int DEFAULT_MIN_CHUNK_TOKENS = 4096;
+	/** 默认交给executor的文档最少的Token数量。 */
+	public static final int DEFAULT_MIN_PARALLEL_TOKENS = 4 * DEFAULT_MIN_CHUNK_TOKENS;
+
+	private final CcArgs args;
+	private final ExecutorService executor;
+	private final int minChunkTokens;
+	private final int minParallelTokens;
+
+	/** 当前文档的输入Token。交给executor后由各块的任务持有，此处换为新的Buffer。 */
+	private CcTokenBuffer inputTokens = new CcTokenBuffer();
+	/** 串行处理inputTokens的过滤器，与inputTokens一同被替换。 */
+	private CcWordsFilter serialFilter;
+	private CharTermAttribute serialTermAtt;
+	private PositionIncrementAttribute serialPosIncrAtt;
+	private PositionLengthAttribute serialPosLenAtt;
+	private TypeAttribute serialTypeAtt;
+	private OffsetAttribute serialOffsetAtt;
+	private boolean serial;
+
+	private final List<Future<ChunkResult>> chunkResults = new ArrayList<>();
+	private int chunkIndex;
+	private CcTokenBuffer chunkTokens;
+	private int chunkTokenIndex;
+	private boolean analyzed;
+	/** 各块中pendingOutputs最大长度的最大值。 */
+	private int pendingOutputsPeak;
+
+	/** 慢分析日志，以及汇总后的当前文档的统计。 */
+	private final CcSlowLog slowLog;
+	private final CcSlowLogExcerpt slowLogExcerpt;
+	private final Map<CharsRef, int[]> slowLogPrefixHits;
+	private long slowLogNanos;
+	private long fstSteps;
+	private int inputTokenCount;
+	private int ccTokenCount;
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+	private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final CcPendingOutputsPeakAttribute peakAtt = addAttribute(CcPendingOutputsPeakAttribute.class);
+
+	public CcParallelWordsFilter(TokenStream input, CcArgs args, ExecutorService executor) {
+		this(input, args, executor, DEFAULT_MIN_CHUNK_TOKENS, DEFAULT_MIN_PARALLEL_TOKENS);
+	}
+
+	public CcParallelWordsFilter(TokenStream input, CcArgs args, ExecutorService executor, int minChunkTokens) {
+		this(input, args, executor, minChunkTokens, DEFAULT_MIN_PARALLEL_TOKENS);
+	}
+
+	/**
+	 * @param minChunkTokens 每块最少的Token数量
+	 * @param minParallelTokens 少于此数量Token的文档在当前线程中串行处理
+	 */
+	public CcParallelWordsFilter(TokenStream input, CcArgs args, ExecutorService executor, int minChunkTokens, int minParallelTokens) {
+		super(input);
+		if (args.distinctWords) {
+			throw new IllegalArgumentException("distinctWords is not supported by " + getClass().getSimpleName());
+		}
+		if (minChunkTokens <= 0) {
+			throw new IllegalArgumentException("minChunkTokens must be > 0 (got " + minChunkTokens + ")");
+		}
+		if (minParallelTokens < 0) {
+			throw new IllegalArgumentException("minParallelTokens must be >= 0 (got " + minParallelTokens + ")");
+		}
+		this.args = args;
+		this.executor = executor;
+		this.minChunkTokens = minChunkTokens;
+		this.minParallelTokens = minParallelTokens;
+		this.slowLog = args.slowLog;
+		this.slowLogExcerpt = slowLog == null ? null : new CcSlowLogExcerpt(slowLog.excerptLength());
+		this.slowLogPrefixHits = slowLog == null ? null : new HashMap<CharsRef, int[]>();
+	}
+
+	/**
+	 * 由 {@link CcAnalyzer} 设置，用于从原文中截取慢分析日志的摘要。
+	 */
+	void setSlowLogExcerptReader(CcSlowLogExcerpt.CaptureReader reader) {
+		if (slowLogExcerpt != null) {
+			slowLogExcerpt.setReader(reader);
+		}
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (slowLog == null) {
+			return nextToken();
+		}
+		long start = System.nanoTime();
+		try {
+			return nextToken();
+		} finally {
+			slowLogNanos += System.nanoTime() - start;
+		}
+	}
+
+	private boolean nextToken() throws IOException {
+		if (!analyzed) {
+			analyze();
+			analyzed = true;
+		}
+		if (serial) {
+			if (!serialFilter.incrementToken()) {
+				return false;
+			}
+			clearAttributes();
+			termAtt.copyBuffer(serialTermAtt.buffer(), 0, serialTermAtt.length());
+			typeAtt.setType(serialTypeAtt.type());
+			offsetAtt.setOffset(serialOffsetAtt.startOffset(), serialOffsetAtt.endOffset());
+			posIncrAtt.setPositionIncrement(serialPosIncrAtt.getPositionIncrement());
+			posLenAtt.setPositionLength(serialPosLenAtt.getPositionLength());
+			return true;
+		}
+		while (chunkTokens == null || chunkTokenIndex >= chunkTokens.size()) {
+			if (chunkIndex >= chunkResults.size()) {
+				return false;
+			}
+			long waitStart = System.nanoTime();
+			ChunkResult chunkResult = awaitChunk(chunkResults.get(chunkIndex++));
+			chunkTokens = chunkResult.tokens;
+			chunkTokenIndex = 0;
+			pendingOutputsPeak = Math.max(pendingOutputsPeak, chunkResult.pendingOutputsPeak);
+			if (slowLog != null) {
+				// 等待的时间已计入该块自身的耗时
+				slowLogNanos += chunkResult.nanos - (System.nanoTime() - waitStart);
+				addChunkStats(chunkResult.fstSteps, chunkResult.inputTokenCount, chunkResult.ccTokenCount, chunkResult.prefixHits);
+			}
+		}
+		clearAttributes();
+		int index = chunkTokenIndex++;
+		chunkTokens.copyTerm(index, termAtt);
+		typeAtt.setType(chunkTokens.type(index));
+		offsetAtt.setOffset(chunkTokens.startOffset(index), chunkTokens.endOffset(index));
+		posIncrAtt.setPositionIncrement(chunkTokens.positionIncrement(index));
+		posLenAtt.setPositionLength(chunkTokens.positionLength(index));
+		return true;
+	}
+
+	private void analyze() throws IOException {
+		CharTermAttribute inputTermAtt = input.addAttribute(CharTermAttribute.class);
+		TypeAttribute inputTypeAtt = input.addAttribute(TypeAttribute.class);
+		OffsetAttribute inputOffsetAtt = input.addAttribute(OffsetAttribute.class);
+		PositionIncrementAttribute inputPosIncrAtt = input.addAttribute(PositionIncrementAttribute.class);
+		PositionLengthAttribute inputPosLenAtt = input.addAttribute(PositionLengthAttribute.class);
+
+		CcTokenBuffer tokens = inputTokens;
+		tokens.clear();
+		int chunkStart = 0;
+		int lastEndOffset = -1;
+		String lastType = null;
+		List<int[]> chunks = new ArrayList<>();
+		while (input.incrementToken()) {
+			int startOffset = inputOffsetAtt.startOffset();
+			String type = inputTypeAtt.type();
+			int index = tokens.size();
+			if (index - chunkStart >= minChunkTokens
+					&& CcWordMatcher.continuity(lastEndOffset, lastType, startOffset, type) == CcWordMatcher.STOP) {
+				chunks.add(new int[] { chunkStart, index });
+				chunkStart = index;
+			}
+			lastEndOffset = inputOffsetAtt.endOffset();
+			lastType = type;
+			tokens.add(inputTermAtt.buffer(), 0, inputTermAtt.length(), type, startOffset, lastEndOffset,
+					inputPosIncrAtt.getPositionIncrement(), inputPosLenAtt.getPositionLength());
+			if (slowLogExcerpt != null) {
+				slowLogExcerpt.addToken(inputTermAtt.buffer(), 0, inputTermAtt.length(), startOffset);
+			}
+		}
+		if (tokens.size() > chunkStart) {
+			chunks.add(new int[] { chunkStart, tokens.size() });
+		}
+
+		if (tokens.size() < minParallelTokens || chunks.size() <= 1) {
+			serial = true;
+			if (serialFilter == null) {
+				createSerialFilter();
+			}
+			serialFilter.reset();
+			return;
+		}
+		// 各任务持有此文档的Buffer，下一个文档使用新的Buffer
+		inputTokens = new CcTokenBuffer();
+		closeSerialFilter();
+		for (int[] chunk : chunks) {
+			chunkResults.add(executor.submit(new ChunkTask(tokens, chunk[0], chunk[1])));
+		}
+	}
+
+	private void createSerialFilter() {
+		serialFilter = new CcWordsFilter(inputTokens.newTokenStream(), args, false);
+		serialTermAtt = serialFilter.getAttribute(CharTermAttribute.class);
+		serialPosIncrAtt = serialFilter.getAttribute(PositionIncrementAttribute.class);
+		serialPosLenAtt = serialFilter.getAttribute(PositionLengthAttribute.class);
+		serialTypeAtt = serialFilter.getAttribute(TypeAttribute.class);
+		serialOffsetAtt = serialFilter.getAttribute(OffsetAttribute.class);
+	}
+
+	private void closeSerialFilter() throws IOException {
+		if (serialFilter != null) {
+			serialFilter.close();
+			serialFilter = null;
+		}
+	}
+
+	private static ChunkResult awaitChunk(Future<ChunkResult> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for chunk analysis");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		if (serial && analyzed) {
+			serialFilter.end();
+			pendingOutputsPeak = serialFilter.getPendingOutputsPeak();
+			if (slowLog != null) {
+				// 串行处理的耗时已计入此过滤器自身
+				addChunkStats(serialFilter.fstSteps(), serialFilter.inputTokenCount(), serialFilter.ccTokenCount(),
+						serialFilter.slowLogPrefixHits());
+			}
+		}
+		peakAtt.setPendingOutputsPeak(pendingOutputsPeak);
+		if (slowLog != null && slowLog.isSlow(slowLogNanos, fstSteps)) {
+			slowLog.record(slowLogNanos, fstSteps, inputTokenCount, ccTokenCount, pendingOutputsPeak, slowLogExcerpt.get(),
+					CcWordsFilter.hotPrefixes(slowLogPrefixHits, slowLog.hotPrefixes()));
+		}
+	}
+
+	private void addChunkStats(long chunkFstSteps, int chunkInputTokenCount, int chunkCcTokenCount, Map<CharsRef, int[]> chunkPrefixHits) {
+		fstSteps += chunkFstSteps;
+		inputTokenCount += chunkInputTokenCount;
+		ccTokenCount += chunkCcTokenCount;
+		for (Map.Entry<CharsRef, int[]> entry : chunkPrefixHits.entrySet()) {
+			CcWordsFilter.addPrefixHits(slowLogPrefixHits, entry.getKey(), entry.getValue()[0]);
+		}
+	}
+
+	/**
+	 * 返回自上次 {@link #reset()} 以来各块中pendingOutputs最大长度的最大值，与串行分析时 {@link CcWordsFilter#getPendingOutputsPeak()} 相同。
+	 */
+	public int getPendingOutputsPeak() {
+		return pendingOutputsPeak;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		cancelChunks();
+		chunkIndex = 0;
+		chunkTokens = null;
+		chunkTokenIndex = 0;
+		analyzed = false;
+		serial = false;
+		pendingOutputsPeak = 0;
+		if (slowLog != null) {
+			slowLogExcerpt.reset();
+			slowLogPrefixHits.clear();
+			slowLogNanos = 0;
+			fstSteps = 0;
+			inputTokenCount = 0;
+			ccTokenCount = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		cancelChunks();
+		chunkTokens = null;
+		try {
+			closeSerialFilter();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * 取消尚未开始的任务。已开始的任务读取的是它们自己的Buffer，可以安全地任其结束。
+	 */
+	private void cancelChunks() {
+		for (Future<ChunkResult> chunkResult : chunkResults) {
+			chunkResult.cancel(false);
+		}
+		chunkResults.clear();
+	}
+
+	private static final class ChunkResult {
+		final CcTokenBuffer tokens;
+		final int pendingOutputsPeak;
+		/** 以下统计仅在启用慢分析日志时有效。 */
+		final long nanos;
+		final long fstSteps;
+		final int inputTokenCount;
+		final int ccTokenCount;
+		final Map<CharsRef, int[]> prefixHits;
+
+		ChunkResult(CcTokenBuffer tokens, CcWordsFilter filter) {
+			this.tokens = tokens;
+			this.pendingOutputsPeak = filter.getPendingOutputsPeak();
+			this.nanos = filter.slowLogNanos();
+			this.fstSteps = filter.fstSteps();
+			this.inputTokenCount = filter.inputTokenCount();
+			this.ccTokenCount = filter.ccTokenCount();
+			this.prefixHits = filter.slowLogPrefixHits();
+		}
+	}
+
+	private final class ChunkTask implements Callable<ChunkResult> {
+		private final CcTokenBuffer inputTokens;
+		private final int fromIndex;
+		private final int toIndex;
+
+		ChunkTask(CcTokenBuffer inputTokens, int fromIndex, int toIndex) {
+			this.inputTokens = inputTokens;
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+		}
+
+		@Override
+		public ChunkResult call() throws IOException {
+			CcTokenBuffer output = new CcTokenBuffer();
+			try (CcWordsFilter ts = new CcWordsFilter(inputTokens.newTokenStream(fromIndex, toIndex), args, false)) {
+				output.fill(ts);
+				return new ChunkResult(output, ts);
+			}
+		}
+	}
+}
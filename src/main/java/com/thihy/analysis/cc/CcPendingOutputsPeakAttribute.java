@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * 文档中同时未完成的匹配数量的最大值，在 {@link org.apache.lucene.analysis.TokenStream#end()} 之后可用，逐个Token读取时为0。
+ * <p>
+ * {@link CcWordsFilter} 与 {@link CcParallelWordsFilter} 都会设置此属性，因此无论分析链末端是哪一个，调用者都可以通过它读取峰值。
+ *
+ * @see CcWordsFilter#getPendingOutputsPeak()
+ */
+public interface CcPendingOutputsPeakAttribute extends Attribute {
+
+	void setPendingOutputsPeak(int pendingOutputsPeak);
+
+	int getPendingOutputsPeak();
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import org.apache.lucene.util.AttributeImpl;
+
+/** Default implementation of {@link CcPendingOutputsPeakAttribute}. */
+public class CcPendingOutputsPeakAttributeImpl extends AttributeImpl implements CcPendingOutputsPeakAttribute, Cloneable {
+	private int pendingOutputsPeak = 0;
+
+	public CcPendingOutputsPeakAttributeImpl() {
+	}
+
+	@Override
+	public void setPendingOutputsPeak(int pendingOutputsPeak) {
+		if (pendingOutputsPeak < 0) {
+			throw new IllegalArgumentException("pendingOutputsPeak must be >= 0 (got " + pendingOutputsPeak + ")");
+		}
+		this.pendingOutputsPeak = pendingOutputsPeak;
+	}
+
+	@Override
+	public int getPendingOutputsPeak() {
+		return pendingOutputsPeak;
+	}
+
+	@Override
+	public void clear() {
+		pendingOutputsPeak = 0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		}
+		if (other instanceof CcPendingOutputsPeakAttributeImpl) {
+			return pendingOutputsPeak == ((CcPendingOutputsPeakAttributeImpl) other).pendingOutputsPeak;
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return pendingOutputsPeak;
+	}
+
+	@Override
+	public void copyTo(AttributeImpl target) {
+		((CcPendingOutputsPeakAttribute) target).setPendingOutputsPeak(pendingOutputsPeak);
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * 由CC分析链的输出构建查询，不使用短语查询或图查询。
+ * <p>
+ * 每个CC Token（只保留不被其它CC Token包含的）成为一个 {@link TermQuery} ；未被任何保留的CC Token覆盖的普通Token按原文区间分组，
+ * 同一区间的多个Token组成析取查询，单个Token即为 {@link TermQuery} 。所有子查询以指定的 {@link BooleanClause.Occur} 组合，
+ * 只有一个子查询时直接返回它。
+ * <p>
+ * Token之间的覆盖关系由偏移量而不是位置决定，因此对 {@link CcArgs#mostTokens} 的两种模式都适用。
+ * <p>
+ * 以（分析器、字段名、输入文本）为键缓存子查询的词项，每次调用都据此构建新的Query，调用方修改返回的查询不会影响缓存；
+ * 分析后没有Token的结果同样缓存。与 {@link CcAnalysisCache} 一样，分析器以实例身份参与比较，配置或词典不同的分析器可以共享同一个实例，
+ * 旧分析器的结果随淘汰逐渐移出。此类是线程安全的。
+ */
+public final class CcQueryBuilder {
+	public static final long DEFAULT_MAX_CACHED_QUERIES = 10000;
+
+	private final BooleanClause.Occur occur;
+	/** 值为各子查询的词项，一个词项即为TermQuery，多个词项为析取查询；没有子查询时为空列表。 */
+	private final Cache<Key, List<List<String>>> cache;
+
+	public CcQueryBuilder(BooleanClause.Occur occur) {
+		this(occur, DEFAULT_MAX_CACHED_QUERIES);
+	}
+
+	public CcQueryBuilder(BooleanClause.Occur occur, long maxCachedQueries) {
+		if (occur == BooleanClause.Occur.MUST_NOT) {
+			throw new IllegalArgumentException("occur must not be MUST_NOT");
+		}
+		if (maxCachedQueries < 0) {
+			throw new IllegalArgumentException("maxCachedQueries must be >= 0 (got " + maxCachedQueries + ")");
+		}
+		this.occur = occur;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maxCachedQueries).recordStats().build();
+	}
+
+	/**
+	 * 构建text在field上的查询。
+	 *
+	 * @param analyzer CC分析链，是缓存键的一部分，对同样的输入应总是给出同样的结果
+	 * @return 分析后没有Token时返回null
+	 */
+	public Query createQuery(Analyzer analyzer, String field, String text) throws IOException {
+		Key key = new Key(analyzer, field, text);
+		List<List<String>> clauses = cache.getIfPresent(key);
+		if (clauses == null) {
+			clauses = analyzeClauses(analyzer, field, text);
+			cache.put(key, clauses);
+		}
+		// Query是可变的（如setBoost），且BooleanQuery的clone()与子查询共享，因此每次都构建新的实例
+		if (clauses.isEmpty()) {
+			return null;
+		}
+		if (clauses.size() == 1) {
+			return newClauseQuery(field, clauses.get(0));
+		}
+		BooleanQuery query = new BooleanQuery();
+		for (List<String> clause : clauses) {
+			query.add(newClauseQuery(field, clause), occur);
+		}
+		return query;
+	}
+
+	private static Query newClauseQuery(String field, List<String> terms) {
+		if (terms.size() == 1) {
+			return new TermQuery(new Term(field, terms.get(0)));
+		}
+		BooleanQuery disjunction = new BooleanQuery(true);
+		for (String term : terms) {
+			disjunction.add(new TermQuery(new Term(field, term)), BooleanClause.Occur.SHOULD);
+		}
+		return disjunction;
+	}
+
+	private static List<List<String>> analyzeClauses(Analyzer analyzer, String field, String text) throws IOException {
+		List<Span> ccSpans = new ArrayList<>();
+		List<Span> plainSpans = new ArrayList<>();
+		try (TokenStream ts = analyzer.tokenStream(field, text)) {
+			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+			TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+			OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				Span span = new Span(termAtt.toString(), offsetAtt.startOffset(), offsetAtt.endOffset());
+				if (CcWordsFilter.TOKEN_TYPE.equals(typeAtt.type())) {
+					ccSpans.add(span);
+				} else {
+					plainSpans.add(span);
+				}
+			}
+			ts.end();
+		}
+
+		// 去掉被其它CC Token包含的CC Token
+		List<Span> keptCcSpans = new ArrayList<>(ccSpans.size());
+		for (Span span : ccSpans) {
+			boolean contained = false;
+			for (Span other : ccSpans) {
+				if (other != span && other.contains(span) && !span.contains(other)) {
+					contained = true;
+					break;
+				}
+			}
+			if (!contained) {
+				keptCcSpans.add(span);
+			}
+		}
+
+		// 按开始位置排列的子查询，集合用于去重
+		Set<List<String>> clauses = new LinkedHashSet<>();
+		Map<Long, Set<String>> uncovered = new LinkedHashMap<>();
+		int ccIndex = 0;
+		int plainIndex = 0;
+		while (ccIndex < keptCcSpans.size() || plainIndex < plainSpans.size()) {
+			boolean takeCc = plainIndex >= plainSpans.size()
+					|| (ccIndex < keptCcSpans.size() && keptCcSpans.get(ccIndex).startOffset <= plainSpans.get(plainIndex).startOffset);
+			if (takeCc) {
+				flushUncovered(uncovered, clauses);
+				Span span = keptCcSpans.get(ccIndex++);
+				clauses.add(Collections.singletonList(span.term));
+			} else {
+				Span span = plainSpans.get(plainIndex++);
+				if (isCovered(span, keptCcSpans)) {
+					continue;
+				}
+				Long range = ((long) span.startOffset << 32) | span.endOffset;
+				Set<String> terms = uncovered.get(range);
+				if (terms == null) {
+					terms = new LinkedHashSet<>();
+					uncovered.put(range, terms);
+				}
+				terms.add(span.term);
+			}
+		}
+		flushUncovered(uncovered, clauses);
+		if (clauses.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<>(clauses));
+	}
+
+	private static boolean isCovered(Span span, List<Span> ccSpans) {
+		for (Span ccSpan : ccSpans) {
+			if (ccSpan.contains(span)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void flushUncovered(Map<Long, Set<String>> uncovered, Set<List<String>> clauses) {
+		for (Set<String> terms : uncovered.values()) {
+			clauses.add(Collections.unmodifiableList(new ArrayList<>(terms)));
+		}
+		uncovered.clear();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	private static final class Span {
+		final String term;
+		final int startOffset;
+		final int endOffset;
+
+		Span(String term, int startOffset, int endOffset) {
+			this.term = term;
+			this.startOffset = startOffset;
+			this.endOffset = endOffset;
+		}
+
+		boolean contains(Span other) {
+			return startOffset <= other.startOffset && other.endOffset <= endOffset;
+		}
+	}
+
+	private static final class Key {
+		private final Analyzer analyzer;
+		private final String fieldName;
+		private final String text;
+		private final int hashCode;
+
+		Key(Analyzer analyzer, String fieldName, String text) {
+			this.analyzer = analyzer;
+			this.fieldName = fieldName;
+			this.text = text;
+			this.hashCode = 31 * (31 * System.identityHashCode(analyzer) + fieldName.hashCode()) + text.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return analyzer == other.analyzer && fieldName.equals(other.fieldName) && text.equals(other.text);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * 按首个码点分片、按需加载的词典。
+ * <p>
+ * {@link #write(CcWordSet, File, int[])} 将词典按词条首个码点所在的区间拆分为多个分片，每个分片是一个独立的 {@link CcWordSet} ，保存在目录下的单独文件中。
+ * {@link #open(File, long, TimeUnit)} 只读取分片清单，分片在首次用到时才加载，闲置超过指定时间后被逐出。因此堆内存和启动开销取决于实际用到的分片，而非整个词典。
+ * <p>
+ * 一个词条的所有Token都在同一个分片中，因此匹配开始时即可由首个Token确定分片。词条序号在所有分片间是全局的：分片内的序号加上分片的起始序号。
+ * <p>
+ * 通过 {@link CcArgs#CcArgs(CcShardedWordSet, boolean, CcCodePointFolding, boolean, CcSlowLog)} 使用。此类是线程安全的。
+ */
+public final class CcShardedWordSet {
+	/** 默认的分片起始码点：ASCII、其它拉丁及符号、中日韩、彝文等、韩文、其余（含增补平面）。 */
+	public static final int[] DEFAULT_SHARD_STARTS = { 0, 0x80, 0x2E80, 0xA000, 0xAC00, 0xD800 };
+
+	private static final String MANIFEST_FILE = "shards";
+	private static final String CODEC = "CcShardedWordSet";
+	private static final int VERSION = 0;
+
+	private final File dir;
+	private final int[] shardStarts;
+	private final int[] shardSizes;
+	private final int[] ordBases;
+	private final LoadingCache<Integer, CcWordSet> shards;
+
+	private CcShardedWordSet(File dir, int[] shardStarts, int[] shardSizes, long expireAfterAccess, TimeUnit unit) {
+		this.dir = dir;
+		this.shardStarts = shardStarts;
+		this.shardSizes = shardSizes;
+		this.ordBases = new int[shardSizes.length];
+		for (int i = 1; i < shardSizes.length; ++i) {
+			ordBases[i] = ordBases[i - 1] + shardSizes[i - 1];
+		}
+		this.shards = CacheBuilder.newBuilder().expireAfterAccess(expireAfterAccess, unit).recordStats()
+				.build(new CacheLoader<Integer, CcWordSet>() {
+
+					@Override
+					public CcWordSet load(Integer shard) throws IOException {
+						return readShard(shard);
+					}
+				});
+	}
+
+	/**
+	 * 以默认的分片区间 {@link #DEFAULT_SHARD_STARTS} 写入wordSet。
+	 */
+	public static void write(CcWordSet wordSet, File dir) throws IOException {
+		write(wordSet, dir, DEFAULT_SHARD_STARTS);
+	}
+
+	/**
+	 * 将wordSet拆分为分片写入dir。
+	 *
+	 * @param shardStarts 各分片的起始码点，严格递增且第一个为0
+	 */
+	public static void write(CcWordSet wordSet, File dir, int[] shardStarts) throws IOException {
+		if (shardStarts.length == 0 || shardStarts[0] != 0) {
+			throw new IllegalArgumentException("shardStarts must start with 0 (got " + Arrays.toString(shardStarts) + ")");
+		}
+		for (int i = 1; i < shardStarts.length; ++i) {
+			if (shardStarts[i] <= shardStarts[i - 1]) {
+				throw new IllegalArgumentException("shardStarts must be strictly increasing (got " + Arrays.toString(shardStarts) + ")");
+			}
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create directory " + dir);
+		}
+
+		int[] shardSizes = new int[shardStarts.length];
+		// FST按码点顺序枚举，同一分片的词条是连续的
+		IntsRefFSTEnum<Long> fstEnum = new IntsRefFSTEnum<>(wordSet.fst);
+		IntsRefFSTEnum.InputOutput<Long> entry = fstEnum.next();
+		BytesRef scratch = new BytesRef();
+		for (int shard = 0; shard < shardStarts.length; ++shard) {
+			int shardEnd = shard + 1 < shardStarts.length ? shardStarts[shard + 1] : Integer.MAX_VALUE;
+			BytesRefHash shardWords = null;
+			org.apache.lucene.util.fst.Builder<Long> fstBuilder = null;
+			while (entry != null && entry.input.ints[entry.input.offset] < shardEnd) {
+				if (fstBuilder == null) {
+					fstBuilder = new org.apache.lucene.util.fst.Builder<>(FST.INPUT_TYPE.BYTE4, PositiveIntOutputs.getSingleton());
+					shardWords = new BytesRefHash();
+				}
+				int ord = shardWords.add(wordSet.words.get(entry.output.intValue(), scratch));
+				if (ord < 0) {
+					ord = -ord - 1;
+				}
+				fstBuilder.add(entry.input, (long) ord);
+				entry = fstEnum.next();
+			}
+			if (fstBuilder != null) {
+				shardSizes[shard] = shardWords.size();
+				writeShard(dir, shard, fstBuilder.finish(), shardWords);
+			}
+		}
+
+		try (OutputStreamDataOutput out = new OutputStreamDataOutput(new BufferedOutputStream(new FileOutputStream(new File(dir,
+				MANIFEST_FILE))))) {
+			CodecUtil.writeHeader(out, CODEC, VERSION);
+			out.writeVInt(shardStarts.length);
+			for (int shard = 0; shard < shardStarts.length; ++shard) {
+				out.writeVInt(shardStarts[shard]);
+				out.writeVInt(shardSizes[shard]);
+			}
+		}
+	}
+
+	private static void writeShard(File dir, int shard, FST<Long> fst, BytesRefHash words) throws IOException {
+		try (OutputStreamDataOutput out = new OutputStreamDataOutput(new BufferedOutputStream(new FileOutputStream(shardFile(dir,
+				shard))))) {
+			CodecUtil.writeHeader(out, CODEC, VERSION);
+			writeWords(out, words);
+			fst.save(out);
+		}
+	}
+
+	private static void writeWords(DataOutput out, BytesRefHash words) throws IOException {
+		BytesRef scratch = new BytesRef();
+		out.writeVInt(words.size());
+		for (int ord = 0; ord < words.size(); ++ord) {
+			words.get(ord, scratch);
+			out.writeVInt(scratch.length);
+			out.writeBytes(scratch.bytes, scratch.offset, scratch.length);
+		}
+	}
+
+	private static File shardFile(File dir, int shard) {
+		return new File(dir, "shard-" + shard);
+	}
+
+	/**
+	 * 打开dir中的分片词典，此时只读取分片清单。
+	 *
+	 * @param expireAfterAccess 分片闲置多久后被逐出
+	 */
+	public static CcShardedWordSet open(File dir, long expireAfterAccess, TimeUnit unit) throws IOException {
+		try (InputStreamDataInput in = new InputStreamDataInput(new BufferedInputStream(new FileInputStream(new File(dir, MANIFEST_FILE))))) {
+			CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+			int shardCount = in.readVInt();
+			int[] shardStarts = new int[shardCount];
+			int[] shardSizes = new int[shardCount];
+			for (int shard = 0; shard < shardCount; ++shard) {
+				shardStarts[shard] = in.readVInt();
+				shardSizes[shard] = in.readVInt();
+			}
+			return new CcShardedWordSet(dir, shardStarts, shardSizes, expireAfterAccess, unit);
+		}
+	}
+
+	private CcWordSet readShard(int shard) throws IOException {
+		try (InputStreamDataInput in = new InputStreamDataInput(new BufferedInputStream(new FileInputStream(shardFile(dir, shard))))) {
+			CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+			BytesRefHash words = readWords(in);
+			FST<Long> fst = new FST<>(in, PositiveIntOutputs.getSingleton());
+			return new CcWordSet(fst, words);
+		}
+	}
+
+	private static BytesRefHash readWords(DataInput in) throws IOException {
+		int size = in.readVInt();
+		BytesRefHash words = new BytesRefHash();
+		BytesRef scratch = new BytesRef();
+		for (int ord = 0; ord < size; ++ord) {
+			int length = in.readVInt();
+			if (scratch.bytes.length < length) {
+				scratch.bytes = new byte[length];
+			}
+			in.readBytes(scratch.bytes, 0, length);
+			scratch.length = length;
+			words.add(scratch);
+		}
+		return words;
+	}
+
+	/** 分片数量。 */
+	public int shardCount() {
+		return shardStarts.length;
+	}
+
+	/** 首个码点为codePoint的词条所在的分片。 */
+	public int shardOf(int codePoint) {
+		int index = Arrays.binarySearch(shardStarts, codePoint);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/** 分片中的词条数量。 */
+	public int shardSize(int shard) {
+		return shardSizes[shard];
+	}
+
+	/** 分片中词条的全局起始序号。 */
+	public int ordBase(int shard) {
+		return ordBases[shard];
+	}
+
+	/** 所有分片的词条总数。 */
+	public int size() {
+		int last = shardSizes.length - 1;
+		return ordBases[last] + shardSizes[last];
+	}
+
+	/**
+	 * 返回分片，未加载时加载之。
+	 *
+	 * @return 分片中没有词条时返回null
+	 */
+	public CcWordSet shard(int shard) throws IOException {
+		if (shardSizes[shard] == 0) {
+			return null;
+		}
+		try {
+			return shards.get(shard);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("failed to load shard " + shard + " from " + dir, cause);
+		}
+	}
+
+	/** 返回全局序号为ord的词条原文。 */
+	public String word(int ord) throws IOException {
+		int shard = Arrays.binarySearch(ordBases, ord);
+		if (shard < 0) {
+			shard = -shard - 2;
+		} else {
+			// 跳过空分片，它们与下一个分片的起始序号相同
+			while (shardSizes[shard] == 0) {
+				shard++;
+			}
+		}
+		return shard(shard).word(ord - ordBases[shard]);
+	}
+
+	/** 当前已加载的分片数量。 */
+	public long loadedShards() {
+		return shards.size();
+	}
+
+	/** 分片缓存的命中与加载统计。 */
+	public CacheStats stats() {
+		return shards.stats();
+	}
+
+	/** 逐出所有已加载的分片。 */
+	public void evictAll() {
+		shards.invalidateAll();
+		// invalidateAll()不会清空记录读访问的队列，其中的条目仍引用着分片，要到下次清理时才释放
+		shards.cleanUp();
+	}
+
+	/** 清理已过期的分片。过期清理也会在访问时顺带进行。 */
+	public void cleanUp() {
+		shards.cleanUp();
+	}
+
+	@Override
+	public String toString() {
+		return "CcShardedWordSet [dir=" + dir + ", shards=" + shardStarts.length + ", size=" + size() + "]";
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link CcWordsFilter} 的慢分析日志。文档的分析耗时或FST查找次数超过阈值时，记录一份该文档的诊断信息。
+ * <p>
+ * 记录保存在固定容量的环形缓冲区中：写入方（分析线程）无锁地写入，缓冲区满时覆盖最旧的记录；读取方通过 {@link #drain(Reporter)}
+ * 或 {@link #scheduleReporter(ScheduledExecutorService, Reporter, long, TimeUnit)} 异步地取出记录。未达到阈值的文档只需付出计时与计数的代价。
+ * <p>
+ * 通过 {@link CcArgs#slowLog} 启用。一个实例可以被多个分析链共享。
+ */
+public final class CcSlowLog {
+	private final long thresholdNanos;
+	private final long thresholdFstSteps;
+	private final int excerptLength;
+	private final int hotPrefixes;
+
+	private final AtomicReferenceArray<Sample> ring;
+	private final int mask;
+	private final AtomicLong writeSequence = new AtomicLong();
+	/** 只由持有this锁的读取方访问。 */
+	private long readSequence;
+	private final AtomicLong dropped = new AtomicLong();
+
+	private CcSlowLog(Builder builder) {
+		this.thresholdNanos = builder.thresholdNanos;
+		this.thresholdFstSteps = builder.thresholdFstSteps;
+		this.excerptLength = builder.excerptLength;
+		this.hotPrefixes = builder.hotPrefixes;
+		int capacity = Integer.highestOneBit(builder.capacity - 1) << 1;
+		this.ring = new AtomicReferenceArray<>(Math.max(1, capacity));
+		this.mask = ring.length() - 1;
+	}
+
+	int excerptLength() {
+		return excerptLength;
+	}
+
+	int hotPrefixes() {
+		return hotPrefixes;
+	}
+
+	boolean isSlow(long elapsedNanos, long fstSteps) {
+		return elapsedNanos >= thresholdNanos || fstSteps >= thresholdFstSteps;
+	}
+
+	void record(long elapsedNanos, long fstSteps, int inputTokens, int ccTokens, int pendingOutputsPeak, String excerpt,
+			List<String> hotPrefixes) {
+		long sequence = writeSequence.getAndIncrement();
+		Sample sample = new Sample(sequence, System.currentTimeMillis(), elapsedNanos, fstSteps, inputTokens, ccTokens,
+				pendingOutputsPeak, excerpt, hotPrefixes);
+		int index = (int) sequence & mask;
+		while (true) {
+			Sample current = ring.get(index);
+			if (current != null && current.sequence > sequence) {
+				// 写入过慢，槽位已被更新的记录占用
+				return;
+			}
+			if (ring.compareAndSet(index, current, sample)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 将自上次读取以来的记录按写入顺序交给reporter。
+	 *
+	 * @return 交给reporter的记录数量
+	 */
+	public synchronized int drain(Reporter reporter) {
+		long write = writeSequence.get();
+		long read = readSequence;
+		if (write - read > ring.length()) {
+			dropped.addAndGet(write - ring.length() - read);
+			read = write - ring.length();
+		}
+		int count = 0;
+		while (read < write) {
+			Sample sample = ring.get((int) read & mask);
+			if (sample == null || sample.sequence < read) {
+				// 写入方已分配序号但尚未写入，下次再读
+				break;
+			}
+			if (sample.sequence == read) {
+				reporter.report(sample);
+				count++;
+			} else {
+				dropped.incrementAndGet();
+			}
+			read++;
+		}
+		readSequence = read;
+		return count;
+	}
+
+	/**
+	 * 在executor上周期性地调用 {@link #drain(Reporter)} 。reporter抛出的异常不会终止调度。
+	 */
+	public ScheduledFuture<?> scheduleReporter(ScheduledExecutorService executor, final Reporter reporter, long period, TimeUnit unit) {
+		return executor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					drain(reporter);
+				} catch (RuntimeException e) {
+					// 保持调度
+				}
+			}
+		}, period, period, unit);
+	}
+
+	/** 因缓冲区已满而被覆盖、未能读取的记录数量。 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/** 累计写入的记录数量。 */
+	public long getRecorded() {
+		return writeSequence.get();
+	}
+
+	public interface Reporter {
+		void report(Sample sample);
+	}
+
+	/**
+	 * 一个慢文档的诊断信息。
+	 */
+	public static final class Sample {
+		private final long sequence;
+		private final long timestamp;
+		private final long elapsedNanos;
+		private final long fstSteps;
+		private final int inputTokens;
+		private final int ccTokens;
+		private final int pendingOutputsPeak;
+		private final String excerpt;
+		private final List<String> hotPrefixes;
+
+		Sample(long sequence, long timestamp, long elapsedNanos, long fstSteps, int inputTokens, int ccTokens, int pendingOutputsPeak,
+				String excerpt, List<String> hotPrefixes) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.elapsedNanos = elapsedNanos;
+			this.fstSteps = fstSteps;
+			this.inputTokens = inputTokens;
+			this.ccTokens = ccTokens;
+			this.pendingOutputsPeak = pendingOutputsPeak;
+			this.excerpt = excerpt;
+			this.hotPrefixes = Collections.unmodifiableList(hotPrefixes);
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		/** 记录的时间，单位为毫秒。 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * 在 {@link CcWordsFilter#incrementToken()} 中花费的时间，包括上游分析链的时间。由 {@link CcParallelWordsFilter} 分析时，
+		 * 为各线程所用时间之和，不含等待的时间。
+		 */
+		public long getElapsed(TimeUnit unit) {
+			return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/** FST查找次数。 */
+		public long getFstSteps() {
+			return fstSteps;
+		}
+
+		/** 输入Token数量。 */
+		public int getInputTokens() {
+			return inputTokens;
+		}
+
+		/** 输出的CC Token数量。 */
+		public int getCcTokens() {
+			return ccTokens;
+		}
+
+		public int getPendingOutputsPeak() {
+			return pendingOutputsPeak;
+		}
+
+		/** 从第一个输入Token开始的一段原文。没有原文可用时（过滤器未经 {@link CcAnalyzer} 使用），为按偏移量排列的输入Token。 */
+		public String getExcerpt() {
+			return excerpt;
+		}
+
+		/** 使匹配延续次数最多的起始Token，形如“token=次数”，由多到少排列。 */
+		public List<String> getHotPrefixes() {
+			return hotPrefixes;
+		}
+
+		@Override
+		public String toString() {
+			return "Sample [sequence=" + sequence + ", elapsedMicros=" + getElapsed(TimeUnit.MICROSECONDS) + ", fstSteps=" + fstSteps
+					+ ", inputTokens=" + inputTokens + ", ccTokens=" + ccTokens + ", pendingOutputsPeak=" + pendingOutputsPeak
+					+ ", hotPrefixes=" + hotPrefixes + ", excerpt=" + excerpt + "]";
+		}
+	}
+
+	public static class Builder {
+		private long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+		private long thresholdFstSteps = Long.MAX_VALUE;
+		private int capacity = 256;
+		private int excerptLength = 200;
+		private int hotPrefixes = 5;
+
+		public Builder() {
+		}
+
+		/** 耗时阈值，默认为10毫秒。 */
+		public Builder threshold(long duration, TimeUnit unit) {
+			if (duration < 0) {
+				throw new IllegalArgumentException("duration must be >= 0 (got " + duration + ")");
+			}
+			this.thresholdNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/** FST查找次数阈值，默认不限制。 */
+		public Builder fstStepsThreshold(long fstSteps) {
+			if (fstSteps < 0) {
+				throw new IllegalArgumentException("fstSteps must be >= 0 (got " + fstSteps + ")");
+			}
+			this.thresholdFstSteps = fstSteps;
+			return this;
+		}
+
+		/** 环形缓冲区的容量，向上取整为2的幂，默认为256。 */
+		public Builder capacity(int capacity) {
+			if (capacity <= 0 || capacity > (1 << 30)) {
+				throw new IllegalArgumentException("capacity must be in (0, 2^30] (got " + capacity + ")");
+			}
+			this.capacity = capacity;
+			return this;
+		}
+
+		/** 摘要的最大字符数，默认为200。 */
+		public Builder excerptLength(int excerptLength) {
+			if (excerptLength < 0) {
+				throw new IllegalArgumentException("excerptLength must be >= 0 (got " + excerptLength + ")");
+			}
+			this.excerptLength = excerptLength;
+			return this;
+		}
+
+		/** 记录的热点前缀数量，默认为5。 */
+		public Builder hotPrefixes(int hotPrefixes) {
+			if (hotPrefixes < 0) {
+				throw new IllegalArgumentException("hotPrefixes must be >= 0 (got " + hotPrefixes + ")");
+			}
+			this.hotPrefixes = hotPrefixes;
+			return this;
+		}
+
+		public CcSlowLog build() {
+			return new CcSlowLog(this);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 慢分析日志中的文档摘要：从第一个输入Token的起始偏移量开始的一段原文。
+ * <p>
+ * 原文由 {@link CaptureReader} 在分词器读取输入时截留（{@link CcAnalyzer} 会自动设置），只截留输入开头的若干字符。
+ * 没有原文可用时（例如过滤器被单独使用，或第一个Token之前的空白过长），按偏移量将输入Token排列在原来的位置上，Token之间的间隙以空格填充。
+ */
+final class CcSlowLogExcerpt {
+	private final int maxLength;
+	private CaptureReader reader;
+	private final StringBuilder tokens = new StringBuilder();
+	private int firstStartOffset = -1;
+
+	CcSlowLogExcerpt(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	void setReader(CaptureReader reader) {
+		this.reader = reader;
+	}
+
+	void addToken(char[] term, int termOffset, int termLength, int startOffset) {
+		if (firstStartOffset < 0) {
+			firstStartOffset = startOffset;
+		}
+		if (tokens.length() >= maxLength) {
+			return;
+		}
+		int position = startOffset - firstStartOffset;
+		if (position < tokens.length()) {
+			// 与前一个Token重叠
+			return;
+		}
+		while (tokens.length() < position && tokens.length() < maxLength) {
+			tokens.append(' ');
+		}
+		tokens.append(term, termOffset, Math.min(termLength, maxLength - tokens.length()));
+	}
+
+	String get() {
+		if (firstStartOffset < 0) {
+			return "";
+		}
+		if (reader != null && reader.covers(firstStartOffset)) {
+			return reader.captured(firstStartOffset, maxLength);
+		}
+		return tokens.toString();
+	}
+
+	void reset() {
+		tokens.setLength(0);
+		firstStartOffset = -1;
+	}
+
+	/**
+	 * 截留输入开头若干字符的Reader，同一实例通过 {@link #setInput(Reader)} 在多个文档间复用。
+	 */
+	static final class CaptureReader extends FilterReader {
+		private final char[] captured;
+		private int capturedLength;
+
+		CaptureReader(Reader in, int capacity) {
+			super(in);
+			this.captured = new char[capacity];
+		}
+
+		void setInput(Reader in) {
+			this.in = in;
+			this.capturedLength = 0;
+		}
+
+		boolean covers(int offset) {
+			return offset < capturedLength;
+		}
+
+		String captured(int offset, int maxLength) {
+			return new String(captured, offset, Math.min(maxLength, capturedLength - offset));
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = in.read();
+			if (c >= 0 && capturedLength < captured.length) {
+				captured[capturedLength++] = (char) c;
+			}
+			return c;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int read = in.read(cbuf, off, len);
+			if (read > 0 && capturedLength < captured.length) {
+				int count = Math.min(read, captured.length - capturedLength);
+				System.arraycopy(cbuf, off, captured, capturedLength, count);
+				capturedLength += count;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// 跳过的字符也要截留，否则偏移量对不上
+			char[] buffer = new char[(int) Math.min(n, 1024)];
+			long skipped = 0;
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (read < 0) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * 去重模式下，当前词条在整个文档中出现的次数。
+ *
+ * @see CcArgs#distinctWords
+ */
+public interface CcTermFrequencyAttribute extends Attribute {
+
+	void setTermFrequency(int termFrequency);
+
+	int getTermFrequency();
+}
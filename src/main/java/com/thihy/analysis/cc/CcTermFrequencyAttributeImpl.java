@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import org.apache.lucene.util.AttributeImpl;
+
+/** Default implementation of {@link CcTermFrequencyAttribute}. */
+public class CcTermFrequencyAttributeImpl extends AttributeImpl implements CcTermFrequencyAttribute, Cloneable {
+	private int termFrequency = 1;
+
+	public CcTermFrequencyAttributeImpl() {
+	}
+
+	@Override
+	public void setTermFrequency(int termFrequency) {
+		if (termFrequency < 1) {
+			throw new IllegalArgumentException("termFrequency must be >= 1 (got " + termFrequency + ")");
+		}
+		this.termFrequency = termFrequency;
+	}
+
+	@Override
+	public int getTermFrequency() {
+		return termFrequency;
+	}
+
+	@Override
+	public void clear() {
+		termFrequency = 1;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		}
+		if (other instanceof CcTermFrequencyAttributeImpl) {
+			return termFrequency == ((CcTermFrequencyAttributeImpl) other).termFrequency;
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return termFrequency;
+	}
+
+	@Override
+	public void copyTo(AttributeImpl target) {
+		((CcTermFrequencyAttribute) target).setTermFrequency(termFrequency);
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * 以紧凑的原始类型数组保存一段Token序列（term、type、offset、posInc、posLen及 {@link CcTermFrequencyAttribute} ），
+ * 连同结束时的 {@link CcPendingOutputsPeakAttribute} ，并可以重放为 {@link TokenStream} 。
+ * <p>
+ * 所有term的字符连续地存放在同一个char数组中，每个Token在int数组中占用 {@link #STRIDE} 个槽位，type被去重后以序号引用。
+ */
+public final class CcTokenBuffer implements Accountable {
+	private static final int TERM_END = 0;
+	private static final int TYPE = 1;
+	private static final int START_OFFSET = 2;
+	private static final int END_OFFSET = 3;
+	private static final int POSITION_INCREMENT = 4;
+	private static final int POSITION_LENGTH = 5;
+	private static final int TERM_FREQUENCY = 6;
+	static final int STRIDE = 7;
+
+	private char[] termChars = new char[16];
+	private int termCharsLength;
+	private int[] tokens = new int[8 * STRIDE];
+	private int size;
+	private String[] types = new String[2];
+	private int typeCount;
+	private int finalOffset;
+	private int finalPositionIncrement;
+	private int pendingOutputsPeak;
+
+	public CcTokenBuffer() {
+	}
+
+	/**
+	 * 读取整个TokenStream（包括reset/end），并追加到此Buffer中。调用方负责关闭TokenStream。
+	 */
+	public void fill(TokenStream ts) throws IOException {
+		CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+		TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+		OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+		PositionIncrementAttribute posIncrAtt = ts.addAttribute(PositionIncrementAttribute.class);
+		PositionLengthAttribute posLenAtt = ts.addAttribute(PositionLengthAttribute.class);
+		// 只读取已有的CC属性，不为其它分析链添加
+		CcTermFrequencyAttribute termFreqAtt = ts.hasAttribute(CcTermFrequencyAttribute.class) ? ts
+				.getAttribute(CcTermFrequencyAttribute.class) : null;
+		CcPendingOutputsPeakAttribute peakAtt = ts.hasAttribute(CcPendingOutputsPeakAttribute.class) ? ts
+				.getAttribute(CcPendingOutputsPeakAttribute.class) : null;
+		ts.reset();
+		while (ts.incrementToken()) {
+			add(termAtt.buffer(), 0, termAtt.length(), typeAtt.type(), offsetAtt.startOffset(), offsetAtt.endOffset(),
+					posIncrAtt.getPositionIncrement(), posLenAtt.getPositionLength(),
+					termFreqAtt == null ? 1 : termFreqAtt.getTermFrequency());
+		}
+		ts.end();
+		setEnd(offsetAtt.endOffset(), posIncrAtt.getPositionIncrement());
+		if (peakAtt != null) {
+			pendingOutputsPeak = peakAtt.getPendingOutputsPeak();
+		}
+	}
+
+	public void add(char[] term, int termOffset, int termLength, String type, int startOffset, int endOffset, int positionIncrement,
+			int positionLength) {
+		add(term, termOffset, termLength, type, startOffset, endOffset, positionIncrement, positionLength, 1);
+	}
+
+	public void add(char[] term, int termOffset, int termLength, String type, int startOffset, int endOffset, int positionIncrement,
+			int positionLength, int termFrequency) {
+		termChars = ArrayUtil.grow(termChars, termCharsLength + termLength);
+		System.arraycopy(term, termOffset, termChars, termCharsLength, termLength);
+		termCharsLength += termLength;
+
+		tokens = ArrayUtil.grow(tokens, (size + 1) * STRIDE);
+		int base = size * STRIDE;
+		tokens[base + TERM_END] = termCharsLength;
+		tokens[base + TYPE] = typeOrd(type);
+		tokens[base + START_OFFSET] = startOffset;
+		tokens[base + END_OFFSET] = endOffset;
+		tokens[base + POSITION_INCREMENT] = positionIncrement;
+		tokens[base + POSITION_LENGTH] = positionLength;
+		tokens[base + TERM_FREQUENCY] = termFrequency;
+		size++;
+	}
+
+	public void setEnd(int finalOffset, int finalPositionIncrement) {
+		this.finalOffset = finalOffset;
+		this.finalPositionIncrement = finalPositionIncrement;
+	}
+
+	private int typeOrd(String type) {
+		// 一个TokenStream中的type通常只有寥寥几种，且多为常量，故而线性查找即可。
+		for (int i = 0; i < typeCount; ++i) {
+			if (types[i] == type || types[i].equals(type)) {
+				return i;
+			}
+		}
+		if (typeCount == types.length) {
+			types = Arrays.copyOf(types, typeCount * 2);
+		}
+		types[typeCount] = type;
+		return typeCount++;
+	}
+
+	public void clear() {
+		termCharsLength = 0;
+		size = 0;
+		typeCount = 0;
+		Arrays.fill(types, null);
+		finalOffset = 0;
+		finalPositionIncrement = 0;
+		pendingOutputsPeak = 0;
+	}
+
+	/**
+	 * 将内部数组收缩至实际大小，适用于需要长期持有此Buffer的场景（如缓存）。
+	 */
+	public void trim() {
+		termChars = Arrays.copyOf(termChars, termCharsLength);
+		tokens = Arrays.copyOf(tokens, size * STRIDE);
+		types = Arrays.copyOf(types, typeCount);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getFinalOffset() {
+		return finalOffset;
+	}
+
+	public int getFinalPositionIncrement() {
+		return finalPositionIncrement;
+	}
+
+	public int getPendingOutputsPeak() {
+		return pendingOutputsPeak;
+	}
+
+	public int startOffset(int index) {
+		return tokens[index * STRIDE + START_OFFSET];
+	}
+
+	public int endOffset(int index) {
+		return tokens[index * STRIDE + END_OFFSET];
+	}
+
+	public int positionIncrement(int index) {
+		return tokens[index * STRIDE + POSITION_INCREMENT];
+	}
+
+	public int positionLength(int index) {
+		return tokens[index * STRIDE + POSITION_LENGTH];
+	}
+
+	public int termFrequency(int index) {
+		return tokens[index * STRIDE + TERM_FREQUENCY];
+	}
+
+	public String type(int index) {
+		return types[tokens[index * STRIDE + TYPE]];
+	}
+
+	public String term(int index) {
+		int termStart = termStart(index);
+		return new String(termChars, termStart, tokens[index * STRIDE + TERM_END] - termStart);
+	}
+
+	/**
+	 * 将第index个Token的term复制到termAtt中，不创建String。
+	 */
+	public void copyTerm(int index, CharTermAttribute termAtt) {
+		int termStart = termStart(index);
+		termAtt.copyBuffer(termChars, termStart, tokens[index * STRIDE + TERM_END] - termStart);
+	}
+
+	private int termStart(int index) {
+		return index == 0 ? 0 : tokens[(index - 1) * STRIDE + TERM_END];
+	}
+
+	@Override
+	public long ramBytesUsed() {
+		return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 6 * RamUsageEstimator.NUM_BYTES_INT + 3
+				* RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.sizeOf(termChars) + RamUsageEstimator.sizeOf(tokens)
+				+ RamUsageEstimator.shallowSizeOf(types);
+	}
+
+	/**
+	 * 重放全部Token。返回的TokenStream与此Buffer共享数据，使用期间不能修改此Buffer；但在两次 {@link TokenStream#reset()} 之间可以
+	 * {@link #clear()} 后重新填充，reset时重放的是此时Buffer中的全部Token，从而可以复用同一个TokenStream（及其后的过滤器）。
+	 */
+	public TokenStream newTokenStream() {
+		return new ReplayTokenStream(0, -1);
+	}
+
+	/**
+	 * 重放[fromIndex, toIndex)之间的Token。
+	 */
+	public TokenStream newTokenStream(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size);
+		}
+		return new ReplayTokenStream(fromIndex, toIndex);
+	}
+
+	private final class ReplayTokenStream extends TokenStream {
+		private final int fromIndex;
+		/** 为-1时重放至reset时Buffer的末尾。 */
+		private final int fixedToIndex;
+		private int toIndex;
+		private int index;
+
+		private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+		private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+		private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+		private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+		private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+		private final CcTermFrequencyAttribute termFreqAtt = addAttribute(CcTermFrequencyAttribute.class);
+		private final CcPendingOutputsPeakAttribute peakAtt = addAttribute(CcPendingOutputsPeakAttribute.class);
+
+		ReplayTokenStream(int fromIndex, int toIndex) {
+			this.fromIndex = fromIndex;
+			this.fixedToIndex = toIndex;
+			this.toIndex = toIndex < 0 ? size : toIndex;
+			this.index = fromIndex;
+		}
+
+		@Override
+		public boolean incrementToken() throws IOException {
+			if (index >= toIndex) {
+				return false;
+			}
+			clearAttributes();
+			int base = index * STRIDE;
+			int termStart = termStart(index);
+			termAtt.copyBuffer(termChars, termStart, tokens[base + TERM_END] - termStart);
+			typeAtt.setType(types[tokens[base + TYPE]]);
+			offsetAtt.setOffset(tokens[base + START_OFFSET], tokens[base + END_OFFSET]);
+			posIncrAtt.setPositionIncrement(tokens[base + POSITION_INCREMENT]);
+			posLenAtt.setPositionLength(tokens[base + POSITION_LENGTH]);
+			termFreqAtt.setTermFrequency(tokens[base + TERM_FREQUENCY]);
+			index++;
+			return true;
+		}
+
+		@Override
+		public void end() throws IOException {
+			super.end();
+			if (toIndex == size) {
+				offsetAtt.setOffset(finalOffset, finalOffset);
+				posIncrAtt.setPositionIncrement(finalPositionIncrement);
+				peakAtt.setPendingOutputsPeak(pendingOutputsPeak);
+			} else if (toIndex > 0) {
+				int lastEndOffset = endOffset(toIndex - 1);
+				offsetAtt.setOffset(lastEndOffset, lastEndOffset);
+			}
+		}
+
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			toIndex = fixedToIndex < 0 ? size : fixedToIndex;
+			index = fromIndex;
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * 词典加载或切换后的预热。先通过 {@link CcWordSet#touch()} 读取FST及词条原文，然后反复使用分析链回放样本文本，直到JIT编译趋于稳定或超出时间预算。
+ * <p>
+ * 样本文本包括调用者指定的文本，以及由词典中前若干个词条拼接而成的合成语料（词表通常按词频排列，故而这些词条即为最常见的词条）。
+ * 合成语料中的词条之间混有不匹配的字符和标点，使命中、未命中以及断层的处理都得到执行。
+ * <p>
+ * “稳定”是指连续若干轮回放中JVM的累计编译时间都没有增长；JVM不支持编译时间监控时，回放直至时间预算用尽或达到最大轮数。
+ * 每一轮至少回放指定数量的Token、持续指定的时间（默认分别为10000个与10毫秒），使热点方法在一轮内即可达到C2的编译阈值，
+ * 且一轮的时长远大于编译时间计数的毫秒精度，否则样本很小时，几轮回放可能在方法被编译之前就已“稳定”。
+ * <p>
+ * 编译时间是整个JVM的累计值，其它线程触发的编译同样会使其增长，因此预热与其它负载并行时可能推迟稳定，直至时间预算用尽；
+ * 反之，它不能证明分析链的每个方法都已被编译，只说明编译活动已经平息。
+ * {@link #warm()} 返回所用的时间，编排系统可以据此在节点预热完毕后再导入流量。
+ */
+public final class CcWarmer {
+	private static final String[] FILLERS = { "", "的", "，", " ", "x", "。" };
+	private static final int WORDS_PER_DOC = 32;
+
+	private final Analyzer analyzer;
+	private final CcWordSet wordSet;
+	private final List<String> texts;
+	private final long maxTimeNanos;
+	private final int stableRounds;
+	private final int maxRounds;
+	private final long minTokensPerRound;
+	private final long minRoundNanos;
+
+	private CcWarmer(Builder builder) {
+		this.analyzer = builder.analyzer;
+		this.wordSet = builder.wordSet;
+		this.texts = new ArrayList<>(builder.texts);
+		this.texts.addAll(syntheticCorpus(builder.wordSet, builder.sampleWords));
+		this.maxTimeNanos = builder.maxTimeNanos;
+		this.stableRounds = builder.stableRounds;
+		this.maxRounds = builder.maxRounds;
+		this.minTokensPerRound = builder.minTokensPerRound;
+		this.minRoundNanos = builder.minRoundNanos;
+	}
+
+	private static List<String> syntheticCorpus(CcWordSet wordSet, int sampleWords) {
+		List<String> docs = new ArrayList<>();
+		Random random = new Random(0);
+		int count = Math.min(sampleWords, wordSet.words.size());
+		StringBuilder doc = new StringBuilder();
+		for (int ord = 0; ord < count; ++ord) {
+			doc.append(wordSet.word(ord)).append(FILLERS[random.nextInt(FILLERS.length)]);
+			if ((ord + 1) % WORDS_PER_DOC == 0) {
+				docs.add(doc.toString());
+				doc.setLength(0);
+			}
+		}
+		if (doc.length() > 0) {
+			docs.add(doc.toString());
+		}
+		return docs;
+	}
+
+	/**
+	 * 执行预热。
+	 */
+	public Result warm() throws IOException {
+		CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+		boolean monitorCompilation = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+		long compilationStart = monitorCompilation ? compilation.getTotalCompilationTime() : 0;
+
+		long start = System.nanoTime();
+		long checksum = wordSet.touch();
+		long touchNanos = System.nanoTime() - start;
+
+		long tokens = 0;
+		int rounds = 0;
+		int unchangedRounds = 0;
+		boolean stabilized = false;
+		long lastCompilationTime = monitorCompilation ? compilation.getTotalCompilationTime() : 0;
+		while (rounds < maxRounds && System.nanoTime() - start < maxTimeNanos) {
+			tokens += replayRound(start);
+			rounds++;
+			if (monitorCompilation) {
+				long compilationTime = compilation.getTotalCompilationTime();
+				unchangedRounds = compilationTime == lastCompilationTime ? unchangedRounds + 1 : 0;
+				lastCompilationTime = compilationTime;
+				if (unchangedRounds >= stableRounds) {
+					stabilized = true;
+					break;
+				}
+			}
+		}
+		long elapsedNanos = System.nanoTime() - start;
+		long compilationMillis = monitorCompilation ? compilation.getTotalCompilationTime() - compilationStart : -1;
+		return new Result(elapsedNanos, touchNanos, rounds, tokens, stabilized, compilationMillis, checksum);
+	}
+
+	/**
+	 * 回放一轮：反复回放全部样本，直至达到每轮最少的Token数量与时长，或时间预算用尽。
+	 */
+	private long replayRound(long start) throws IOException {
+		long roundStart = System.nanoTime();
+		long tokens = 0;
+		while (true) {
+			long passTokens = 0;
+			for (String text : texts) {
+				passTokens += replay(text);
+			}
+			tokens += passTokens;
+			long now = System.nanoTime();
+			if (passTokens == 0 || now - start >= maxTimeNanos) {
+				return tokens;
+			}
+			if (tokens >= minTokensPerRound && now - roundStart >= minRoundNanos) {
+				return tokens;
+			}
+		}
+	}
+
+	private long replay(String text) throws IOException {
+		long tokens = 0;
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			ts.reset();
+			while (ts.incrementToken()) {
+				tokens++;
+			}
+			ts.end();
+		}
+		return tokens;
+	}
+
+	/**
+	 * 预热的结果。
+	 */
+	public static final class Result {
+		private final long elapsedNanos;
+		private final long touchNanos;
+		private final int rounds;
+		private final long tokens;
+		private final boolean stabilized;
+		private final long compilationMillis;
+		private final long checksum;
+
+		Result(long elapsedNanos, long touchNanos, int rounds, long tokens, boolean stabilized, long compilationMillis, long checksum) {
+			this.elapsedNanos = elapsedNanos;
+			this.touchNanos = touchNanos;
+			this.rounds = rounds;
+			this.tokens = tokens;
+			this.stabilized = stabilized;
+			this.compilationMillis = compilationMillis;
+			this.checksum = checksum;
+		}
+
+		/** 预热的总耗时，包括读取词典的时间。 */
+		public long getElapsed(TimeUnit unit) {
+			return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/** 读取FST及词条原文的耗时。 */
+		public long getTouchTime(TimeUnit unit) {
+			return unit.convert(touchNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/** 回放的轮数，每一轮可能多次回放全部样本。 */
+		public int getRounds() {
+			return rounds;
+		}
+
+		/** 回放过程中产生的Token总数。 */
+		public long getTokens() {
+			return tokens;
+		}
+
+		/** 是否因编译稳定而结束；为false时说明时间预算或轮数已用尽，或JVM不支持编译时间监控。 */
+		public boolean isStabilized() {
+			return stabilized;
+		}
+
+		/** 预热期间JVM的累计编译时间（毫秒），不支持监控时为-1。 */
+		public long getCompilationMillis() {
+			return compilationMillis;
+		}
+
+		/** {@link CcWordSet#touch()} 的校验和。 */
+		public long getChecksum() {
+			return checksum;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [elapsedMillis=" + getElapsed(TimeUnit.MILLISECONDS) + ", touchMillis=" + getTouchTime(TimeUnit.MILLISECONDS)
+					+ ", rounds=" + rounds + ", tokens=" + tokens + ", stabilized=" + stabilized + ", compilationMillis="
+					+ compilationMillis + "]";
+		}
+	}
+
+	public static class Builder {
+		private final Analyzer analyzer;
+		private final CcWordSet wordSet;
+		private final List<String> texts = new ArrayList<>();
+		private int sampleWords = 1000;
+		private long maxTimeNanos = TimeUnit.SECONDS.toNanos(60);
+		private int stableRounds = 3;
+		private int maxRounds = 1000;
+		private long minTokensPerRound = 10000;
+		private long minRoundNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+		/**
+		 * @param analyzer 需要预热的分析链，应使用wordSet
+		 */
+		public Builder(Analyzer analyzer, CcWordSet wordSet) {
+			this.analyzer = analyzer;
+			this.wordSet = wordSet;
+		}
+
+		/** 添加一段样本文本，例如线上的典型文档。 */
+		public Builder addText(String text) {
+			texts.add(text);
+			return this;
+		}
+
+		/** 用于合成语料的词条数量，取词典中的前sampleWords个词条，默认为1000。 */
+		public Builder sampleWords(int sampleWords) {
+			if (sampleWords < 0) {
+				throw new IllegalArgumentException("sampleWords must be >= 0 (got " + sampleWords + ")");
+			}
+			this.sampleWords = sampleWords;
+			return this;
+		}
+
+		/** 时间预算，默认为60秒。 */
+		public Builder maxTime(long duration, TimeUnit unit) {
+			if (duration <= 0) {
+				throw new IllegalArgumentException("duration must be > 0 (got " + duration + ")");
+			}
+			this.maxTimeNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/** 编译时间连续多少轮没有增长即视为稳定，默认为3。 */
+		public Builder stableRounds(int stableRounds) {
+			if (stableRounds <= 0) {
+				throw new IllegalArgumentException("stableRounds must be > 0 (got " + stableRounds + ")");
+			}
+			this.stableRounds = stableRounds;
+			return this;
+		}
+
+		/** 最大回放轮数，默认为1000。 */
+		public Builder maxRounds(int maxRounds) {
+			if (maxRounds <= 0) {
+				throw new IllegalArgumentException("maxRounds must be > 0 (got " + maxRounds + ")");
+			}
+			this.maxRounds = maxRounds;
+			return this;
+		}
+
+		/** 每轮最少回放的Token数量，默认为10000，与C2的编译阈值相当。 */
+		public Builder minTokensPerRound(long minTokensPerRound) {
+			if (minTokensPerRound < 0) {
+				throw new IllegalArgumentException("minTokensPerRound must be >= 0 (got " + minTokensPerRound + ")");
+			}
+			this.minTokensPerRound = minTokensPerRound;
+			return this;
+		}
+
+		/** 每轮最短的回放时间，默认为10毫秒。 */
+		public Builder minRoundTime(long duration, TimeUnit unit) {
+			if (duration < 0) {
+				throw new IllegalArgumentException("duration must be >= 0 (got " + duration + ")");
+			}
+			this.minRoundNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		public CcWarmer build() {
+			return new CcWarmer(this);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.fst.FST;
+
+/**
+ * 词典前缀补全。沿FST走到前缀所在的节点，然后按字典序深度优先地枚举其下的所有词条。
+ * <p>
+ * 前缀必须是分析后的形式：各Token之间以 {@link CcWordSet#WORD_SEPARATOR} 分隔，不包含 {@link CcWordSet#WORD_END} ，最后一个Token可以只是部分输入。
+ * 返回的词条按分析后形式的码点顺序排列。由于 {@link CcWordSet#WORD_SEPARATOR} 排在 {@link CcWordSet#WORD_END} 之前，
+ * 一个词条的扩展词条排在它自身之前，例如“U盘 套”排在“U盘”之前；需要其它顺序（如按长度）时，由调用者对结果重新排序。
+ * maxCount截取的是此顺序下的前若干个词条。
+ * <p>
+ * 此类不是线程安全的，每个线程应使用各自的实例。遍历所用的栈会被复用，因此稳定后补全过程不再分配内存。
+ */
+public final class CcWordCompleter {
+	private final CcWordSet wordSet;
+	private final FST<Long> fst;
+	private final FST.BytesReader fstReader;
+	private final FST.Arc<Long> prefixArc = new FST.Arc<>();
+
+	/** 深度优先遍历的栈，arcStack[i]的累计输出（不含自身）为outputStack[i]。 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private FST.Arc<Long>[] arcStack = new FST.Arc[0];
+	private long[] outputStack = new long[0];
+
+	public CcWordCompleter(CcWordSet wordSet) {
+		this.wordSet = wordSet;
+		this.fst = wordSet.fst;
+		this.fstReader = fst.getBytesReader();
+	}
+
+	/**
+	 * 将最多maxCount个以analyzedPrefix为前缀的词条序号写入ords中。
+	 *
+	 * @return 写入的词条数量
+	 */
+	public int complete(CharSequence analyzedPrefix, int[] ords, int maxCount) throws IOException {
+		if (maxCount > ords.length) {
+			throw new IllegalArgumentException("maxCount must be <= ords.length (got " + maxCount + " > " + ords.length + ")");
+		}
+		if (maxCount <= 0) {
+			return 0;
+		}
+
+		fst.getFirstArc(prefixArc);
+		long output = 0;
+		for (int i = 0; i < analyzedPrefix.length();) {
+			int codePoint = Character.codePointAt(analyzedPrefix, i);
+			if (codePoint == CcWordSet.WORD_END) {
+				throw new IllegalArgumentException("prefix must not contain WORD_END");
+			}
+			if (fst.findTargetArc(codePoint, prefixArc, prefixArc, fstReader) == null) {
+				return 0;
+			}
+			output += prefixArc.output;
+			i += Character.charCount(codePoint);
+		}
+		if (!FST.targetHasArcs(prefixArc)) {
+			return 0;
+		}
+
+		int count = 0;
+		int depth = 0;
+		pushFirstTargetArc(prefixArc, 0, output);
+		while (true) {
+			FST.Arc<Long> arc = arcStack[depth];
+			long arcOutput = outputStack[depth] + arc.output;
+			if (arc.isFinal()) {
+				ords[count++] = (int) (arcOutput + arc.nextFinalOutput);
+				if (count == maxCount) {
+					return count;
+				}
+			}
+			if (FST.targetHasArcs(arc)) {
+				depth++;
+				pushFirstTargetArc(arc, depth, arcOutput);
+				continue;
+			}
+			while (arcStack[depth].isLast()) {
+				if (--depth < 0) {
+					return count;
+				}
+			}
+			fst.readNextArc(arcStack[depth], fstReader);
+		}
+	}
+
+	/**
+	 * 返回最多maxCount个以analyzedPrefix为前缀的词条原文。
+	 */
+	public List<String> completeWords(CharSequence analyzedPrefix, int maxCount) throws IOException {
+		int[] ords = new int[maxCount];
+		int count = complete(analyzedPrefix, ords, maxCount);
+		List<String> words = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			words.add(wordSet.word(ords[i]));
+		}
+		return words;
+	}
+
+	private void pushFirstTargetArc(FST.Arc<Long> follow, int depth, long output) throws IOException {
+		if (depth >= arcStack.length) {
+			int newLength = ArrayUtil.oversize(depth + 1, 1);
+			int oldLength = arcStack.length;
+			arcStack = Arrays.copyOf(arcStack, newLength);
+			for (int i = oldLength; i < newLength; ++i) {
+				arcStack[i] = new FST.Arc<>();
+			}
+			outputStack = Arrays.copyOf(outputStack, newLength);
+		}
+		fst.readFirstTargetArc(follow, arcStack[depth], fstReader);
+		outputStack[depth] = output;
+	}
+}
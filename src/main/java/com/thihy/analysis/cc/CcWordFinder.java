@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * 判断文本中是否包含词典中的词条，并找出第一个匹配。与 {@link CcWordsFilter} 使用相同的匹配规则，但在第一个匹配处立即停止，且不构建任何输出Token。
+ * <p>
+ * “第一个”是指结束位置最靠前的匹配；结束位置相同时取开始位置最靠前的。输入应是 {@link CcWordsFilter} 之前的分析链（如
+ * {@link CcAnalyzer#newWordSetAnalyzer()} ）产生的TokenStream。
+ * <p>
+ * 此类不是线程安全的，每个线程应使用各自的实例。
+ */
+public final class CcWordFinder {
+	private final CcWordSet wordSet;
+	private final CcWordMatcher matcher;
+
+	/** 未完成的匹配，按开始位置排列。 */
+	private CcWordMatcher.Cursor[] cursors = new CcWordMatcher.Cursor[0];
+	private int[] cursorStartOffsets = new int[0];
+	private int cursorCount;
+	private final CcWordMatcher.Cursor scratchCursorOfEnd = new CcWordMatcher.Cursor();
+
+	private int matchOrd = -1;
+	private int matchStartOffset = -1;
+	private int matchEndOffset = -1;
+
+	public CcWordFinder(CcArgs args) {
+		if (args.wordSet == null) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " does not support shardedWordSet");
+		}
+		this.wordSet = args.wordSet;
+		this.matcher = new CcWordMatcher(args);
+	}
+
+	/**
+	 * 使用analyzer分析text并查找第一个匹配。
+	 */
+	public boolean find(Analyzer analyzer, String text) throws IOException {
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			return find(ts);
+		}
+	}
+
+	/**
+	 * 消费input直至找到第一个匹配或输入结束。此方法会调用input的reset()和end()，但不会关闭input。
+	 *
+	 * @return 是否找到匹配
+	 */
+	public boolean find(TokenStream input) throws IOException {
+		CharTermAttribute termAtt = input.addAttribute(CharTermAttribute.class);
+		TypeAttribute typeAtt = input.addAttribute(TypeAttribute.class);
+		OffsetAttribute offsetAtt = input.addAttribute(OffsetAttribute.class);
+
+		cursorCount = 0;
+		matchOrd = -1;
+		matchStartOffset = -1;
+		matchEndOffset = -1;
+		int lastEndOffset = -1;
+		String lastType = null;
+
+		input.reset();
+		while (input.incrementToken()) {
+			char[] chars = termAtt.buffer();
+			int length = termAtt.length();
+			int startOffset = offsetAtt.startOffset();
+			int endOffset = offsetAtt.endOffset();
+			String type = typeAtt.type();
+
+			int continuity = CcWordMatcher.continuity(lastEndOffset, lastType, startOffset, type);
+			lastEndOffset = endOffset;
+			lastType = type;
+
+			if (continuity == CcWordMatcher.STOP) {
+				cursorCount = 0;
+			} else if (continuity == CcWordMatcher.CONTINUE) {
+				int liveCount = 0;
+				for (int i = 0; i < cursorCount; ++i) {
+					CcWordMatcher.Cursor cursor = cursors[i];
+					if (!matcher.matchToken(cursor, chars, 0, length)) {
+						continue;
+					}
+					scratchCursorOfEnd.copyFrom(cursor);
+					if (matcher.matchEnd(scratchCursorOfEnd)) {
+						matchOrd = scratchCursorOfEnd.ord();
+						matchStartOffset = cursorStartOffsets[i];
+						matchEndOffset = endOffset;
+						input.end();
+						return true;
+					}
+					if (!matcher.matchSeparator(cursor)) {
+						continue;
+					}
+					// 保留此匹配，交换Cursor对象以便复用
+					cursors[i] = cursors[liveCount];
+					cursors[liveCount] = cursor;
+					cursorStartOffsets[liveCount] = cursorStartOffsets[i];
+					liveCount++;
+				}
+				cursorCount = liveCount;
+			}
+
+			ensureCursorCapacity(cursorCount + 1);
+			CcWordMatcher.Cursor cursor = matcher.copyFirst(cursors[cursorCount]);
+			if (matcher.matchToken(cursor, chars, 0, length) && matcher.matchSeparator(cursor)) {
+				cursorStartOffsets[cursorCount] = startOffset;
+				cursorCount++;
+			}
+		}
+		input.end();
+		return false;
+	}
+
+	private void ensureCursorCapacity(int minCapacity) {
+		if (minCapacity <= cursors.length) {
+			return;
+		}
+		int oldLength = cursors.length;
+		int newLength = ArrayUtil.oversize(minCapacity, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+		cursors = Arrays.copyOf(cursors, newLength);
+		for (int i = oldLength; i < newLength; ++i) {
+			cursors[i] = new CcWordMatcher.Cursor();
+		}
+		cursorStartOffsets = Arrays.copyOf(cursorStartOffsets, newLength);
+	}
+
+	/** 最近一次匹配到的词条序号，未匹配时为-1。 */
+	public int matchOrd() {
+		return matchOrd;
+	}
+
+	/** 最近一次匹配到的词条原文，未匹配时为null。 */
+	public String matchWord() {
+		return matchOrd < 0 ? null : wordSet.word(matchOrd);
+	}
+
+	public int matchStartOffset() {
+		return matchStartOffset;
+	}
+
+	public int matchEndOffset() {
+		return matchEndOffset;
+	}
+}
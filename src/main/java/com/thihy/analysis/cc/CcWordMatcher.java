@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util.fst.FST;
+
+/**
+ * {@link CcWordsFilter} 与 {@link CcWordFinder} 共用的词典匹配逻辑：在FST上逐Token地推进匹配，以及判断相邻Token是否连续。
+ * <p>
+ * 匹配位置由 {@link Cursor} 表示，其中以原始类型累计输出。此类不是线程安全的。
+ */
+final class CcWordMatcher {
+	/** 相邻Token连续，可以继续匹配。 */
+	static final int CONTINUE = 0;
+	/** 当前Token与上一个Token有交集，不参与已有的匹配。 */
+	static final int SKIP = 1;
+	/** 当前Token与上一个Token之间存在断层，已有的匹配都应结束。 */
+	static final int STOP = 2;
+
+	private static final String ALPHANUM = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.ALPHANUM];
+
+	private final CcWordSet wordSet;
+	/** 词条序号的起始值，用于分片词典。 */
+	private final int ordBase;
+	private final FST<Long> fst;
+	private final FST.BytesReader fstReader;
+	private final FST.Arc<Long> fstFirstArc;
+	private final CcCodePointFolding folding;
+	/** 累计的FST查找次数。 */
+	private long fstSteps;
+
+	CcWordMatcher(CcArgs args) {
+		this(args.wordSet, args.folding, 0);
+	}
+
+	CcWordMatcher(CcWordSet wordSet, CcCodePointFolding folding, int ordBase) {
+		this.wordSet = wordSet;
+		this.ordBase = ordBase;
+		this.fst = wordSet.fst;
+		this.fstReader = fst.getBytesReader();
+		this.fstFirstArc = fst.getFirstArc(new FST.Arc<Long>());
+		this.folding = folding;
+	}
+
+	CcWordSet wordSet() {
+		return wordSet;
+	}
+
+	int ordBase() {
+		return ordBase;
+	}
+
+	/**
+	 * 如果之前存在Token，则需要判断是否是连续的，如果产生交集，则不进行词典检测，如果断层，则结束词典检测。
+	 *
+	 * @param lastEndOffset 上一个Token的结束偏移量，没有上一个Token时为-1
+	 */
+	static int continuity(int lastEndOffset, String lastType, int startOffset, String type) {
+		if (lastEndOffset >= 0) {
+			if (startOffset < lastEndOffset) {
+				return SKIP;
+			} else if (startOffset > lastEndOffset) {
+				// 当存在英文单词，则允许结束1个偏移量。
+				if (startOffset - lastEndOffset == 1 && (lastType == ALPHANUM || type == ALPHANUM)) {
+					// OK
+				} else {
+					return STOP;
+				}
+			}
+		}
+		return CONTINUE;
+	}
+
+	long fstSteps() {
+		return fstSteps;
+	}
+
+	void resetFstSteps() {
+		fstSteps = 0;
+	}
+
+	Cursor copyFirst(Cursor cursor) {
+		cursor.arc.copyFrom(fstFirstArc);
+		cursor.output = 0;
+		return cursor;
+	}
+
+	/**
+	 * 匹配一个Token的所有码点。
+	 *
+	 * @return 是否匹配，不匹配时cursor的状态不确定
+	 */
+	boolean matchToken(Cursor cursor, char[] chars, int offset, int length) throws IOException {
+		final FST.Arc<Long> arc = cursor.arc;
+		long output = cursor.output;
+		final int end = offset + length;
+		for (int i = offset; i < end;) {
+			int codePoint = Character.codePointAt(chars, i, end);
+			i += Character.charCount(codePoint);
+			if (folding != null) {
+				codePoint = folding.fold(codePoint);
+			}
+			fstSteps++;
+			if (fst.findTargetArc(codePoint, arc, arc, fstReader) == null) {
+				return false;
+			}
+			output += arc.output.longValue();
+		}
+		cursor.output = output;
+		return true;
+	}
+
+	boolean matchSeparator(Cursor cursor) throws IOException {
+		fstSteps++;
+		if (fst.findTargetArc(CcWordSet.WORD_SEPARATOR, cursor.arc, cursor.arc, fstReader) == null) {
+			return false;
+		}
+		cursor.output += cursor.arc.output.longValue();
+		return true;
+	}
+
+	/**
+	 * 匹配词条结束符，匹配成功后可以通过 {@link Cursor#ord()} 取得词条序号。
+	 */
+	boolean matchEnd(Cursor cursor) throws IOException {
+		fstSteps++;
+		if (fst.findTargetArc(CcWordSet.WORD_END, cursor.arc, cursor.arc, fstReader) == null) {
+			return false;
+		}
+		cursor.output += cursor.arc.output.longValue() + cursor.arc.nextFinalOutput.longValue();
+		return true;
+	}
+
+	/**
+	 * FST上的匹配位置。累计的输出保存在原始类型的output中，而不是Arc的output中，从而避免每一步都对Long装箱。
+	 */
+	static class Cursor {
+		final FST.Arc<Long> arc = new FST.Arc<>();
+		/** 从起点开始累计的输出，已包含arc自身的输出；arc的nextFinalOutput在 {@link CcWordMatcher#matchEnd(Cursor)} 时才加上。 */
+		long output;
+
+		Cursor copyFrom(Cursor other) {
+			arc.copyFrom(other.arc);
+			output = other.output;
+			return this;
+		}
+
+		/** 匹配到词条结束符后，即为词条序号。 */
+		int ord() {
+			return (int) output;
+		}
+	}
+}
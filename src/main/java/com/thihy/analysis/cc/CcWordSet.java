@@ -28,6 +28,7 @@ import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.IntsRefBuilder;
 import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
 import org.apache.lucene.util.fst.PositiveIntOutputs;
 import org.apache.lucene.util.fst.Util;
 
@@ -44,6 +45,30 @@ public class CcWordSet {
 		this.words = words;
 	}
 
+	/** 返回序号为ord的词条原文。 */
+	public String word(int ord) {
+		return words.get(ord, new BytesRef()).utf8ToString();
+	}
+
+	/**
+	 * 依次读取FST的所有词条以及所有词条原文，使其所在的内存页常驻，并让遍历FST的代码得到编译。用于词典加载后的预热。
+	 *
+	 * @return 读取内容的校验和，调用者应使用它以免读取被优化掉
+	 */
+	public long touch() throws IOException {
+		long checksum = 0;
+		IntsRefFSTEnum<Long> fstEnum = new IntsRefFSTEnum<>(fst);
+		IntsRefFSTEnum.InputOutput<Long> entry;
+		while ((entry = fstEnum.next()) != null) {
+			checksum = checksum * 31 + entry.input.hashCode() + entry.output;
+		}
+		BytesRef scratch = new BytesRef();
+		for (int ord = 0; ord < words.size(); ++ord) {
+			checksum = checksum * 31 + words.get(ord, scratch).hashCode();
+		}
+		return checksum;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder2 = new StringBuilder();
@@ -85,6 +110,25 @@ public class CcWordSet {
 		}
 
 		public void add(CharsRef analyzedText, CharsRef origText) {
+			Integer oldOrd = workingSet.put(toAnalyzedIntsRef(analyzedText, origText), addWord(origText));
+			assert oldOrd == null;
+		}
+
+		/**
+		 * 与 {@link #add(CharsRef, CharsRef)} 相同，但analyzedText已经存在时忽略此词条。
+		 *
+		 * @return 是否添加了此词条
+		 */
+		public boolean addIfAbsent(CharsRef analyzedText, CharsRef origText) {
+			IntsRef analyzedIntsRef = toAnalyzedIntsRef(analyzedText, origText);
+			if (workingSet.containsKey(analyzedIntsRef)) {
+				return false;
+			}
+			workingSet.put(analyzedIntsRef, addWord(origText));
+			return true;
+		}
+
+		private IntsRef toAnalyzedIntsRef(CharsRef analyzedText, CharsRef origText) {
 			if (analyzedText.length <= 0) {
 				throw new IllegalArgumentException("input.length must be > 0 (got " + analyzedText.length + ")");
 			}
@@ -95,6 +139,12 @@ public class CcWordSet {
 			assert !hasHoles(analyzedText) : "input has holes: " + analyzedText;
 			assert !hasHoles(origText) : "output has holes: " + origText;
 
+			IntsRefBuilder analyzedIntsRefBuilder = new IntsRefBuilder();
+			Util.toUTF32(analyzedText, analyzedIntsRefBuilder);
+			return analyzedIntsRefBuilder.toIntsRef();
+		}
+
+		private int addWord(CharsRef origText) {
 			utf8Scratch.copyChars(origText);
 			// lookup in hash
 			int ord = words.add(utf8Scratch.get());
@@ -105,12 +155,7 @@ public class CcWordSet {
 			} else {
 				//System.out.println("  output=" + output + " new ord=" + ord);
 			}
-
-			IntsRefBuilder analyzedIntsRefBuilder = new IntsRefBuilder();
-			Util.toUTF32(analyzedText, analyzedIntsRefBuilder);
-			IntsRef analyzedIntsRef = analyzedIntsRefBuilder.toIntsRef();
-			Integer oldOrd = workingSet.put(analyzedIntsRef, ord);
-			assert oldOrd == null;
+			return ord;
 		}
 
 		/**
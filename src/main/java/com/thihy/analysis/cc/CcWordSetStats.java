@@ -0,0 +1,383 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+
+/**
+ * 词典形态统计，用于预估 {@link CcWordsFilter} 的最坏匹配代价。
+ * <p>
+ * 匹配时，每个输入Token都会开启一个新的匹配，该匹配在后续Token仍构成某个词条的Token前缀时保持存活。因此读入Token序列t1..tk后仍存活的匹配，
+ * 恰好对应于同时也是某个前缀的后缀tj..tk。{@link #getWorstCaseActiveCursors()} 对每个前缀计算这样的后缀数量（类似Aho-Corasick的失配链），
+ * 取其最大值，它通常远小于 {@link #getMaxTokensPerEntry()} 。被越多词条共享的Token前缀，越容易让匹配保持存活，这些前缀按扩展词条数量由多到少列出。
+ * <p>
+ * FST按字典序枚举词条，共享同一Token前缀的词条是连续的，因此统计只需一次遍历，内存占用只与当前路径上的前缀有关。
+ */
+public final class CcWordSetStats {
+	private int entryCount;
+	private int maxTokensPerEntry;
+	private int maxCodePointsPerToken;
+	private long totalTokens;
+	private int[] tokensPerEntryHistogram = new int[1];
+	private int singleTokenEntries;
+	private int singleTokenPrefixEntries;
+	private int prefixEntries;
+	private int firstTokenFanOut;
+	private int prefixCount;
+	/** 同时也是前缀的后缀数量的最大值。 */
+	private int maxLiveSuffixes;
+	private Prefix maxFanOutPrefix;
+	private final List<Prefix> topPrefixes = new ArrayList<>();
+
+	private CcWordSetStats() {
+	}
+
+	/**
+	 * 统计wordSet的形态。
+	 *
+	 * @param topN 列出的扩展词条最多的Token前缀数量
+	 */
+	public static CcWordSetStats compute(CcWordSet wordSet, int topN) throws IOException {
+		if (topN < 0) {
+			throw new IllegalArgumentException("topN must be >= 0 (got " + topN + ")");
+		}
+		CcWordSetStats stats = new CcWordSetStats();
+		stats.collect(wordSet, topN);
+		return stats;
+	}
+
+	private void collect(CcWordSet wordSet, int topN) throws IOException {
+		PriorityQueue<Prefix> queue = new PriorityQueue<>(Math.max(1, topN), Prefix.BY_EXTENSIONS);
+		List<Level> stack = new ArrayList<>();
+		List<String> tokens = new ArrayList<>();
+		String lastFirstToken = null;
+
+		FST<Long> fst = wordSet.fst;
+		FST.BytesReader fstReader = fst.getBytesReader();
+		FST.Arc<Long> rootArc = fst.getFirstArc(new FST.Arc<Long>());
+		IntsRefFSTEnum<Long> fstEnum = new IntsRefFSTEnum<>(fst);
+		IntsRefFSTEnum.InputOutput<Long> entry;
+		while ((entry = fstEnum.next()) != null) {
+			splitTokens(entry.input, tokens);
+			int tokenCount = tokens.size();
+			entryCount++;
+			totalTokens += tokenCount;
+			maxTokensPerEntry = Math.max(maxTokensPerEntry, tokenCount);
+			if (tokenCount >= tokensPerEntryHistogram.length) {
+				tokensPerEntryHistogram = Arrays.copyOf(tokensPerEntryHistogram, ArrayUtil.oversize(tokenCount + 1, 4));
+			}
+			tokensPerEntryHistogram[tokenCount]++;
+			if (tokenCount == 1) {
+				singleTokenEntries++;
+			}
+			if (!tokens.get(0).equals(lastFirstToken)) {
+				firstTokenFanOut++;
+				lastFirstToken = tokens.get(0);
+			}
+
+			// stack.get(k)为当前路径上前k+1个Token组成的前缀
+			int common = 0;
+			while (common < stack.size() && common < tokenCount && stack.get(common).token.equals(tokens.get(common))) {
+				common++;
+			}
+			while (stack.size() > common) {
+				finish(stack, queue, topN);
+			}
+			if (common == tokenCount) {
+				// 词条本身是已有前缀（WORD_END排在WORD_SEPARATOR之后，扩展词条先被枚举）
+				Level level = stack.get(common - 1);
+				level.isEntry = true;
+				common--;
+			}
+			for (int k = 0; k < common; ++k) {
+				stack.get(k).extensions++;
+			}
+			if (common > 0 && common < tokenCount) {
+				Level parent = stack.get(common - 1);
+				if (!tokens.get(common).equals(parent.lastChild)) {
+					parent.fanOut++;
+					parent.lastChild = tokens.get(common);
+				}
+			}
+			for (int k = stack.size(); k < tokenCount - 1; ++k) {
+				Level level = new Level(tokens.get(k), k + 1);
+				level.extensions = 1;
+				level.fanOut = 1;
+				level.lastChild = tokens.get(k + 1);
+				liveSuffixes(fst, fstReader, rootArc, k == 0 ? null : stack.get(k - 1), level);
+				maxLiveSuffixes = Math.max(maxLiveSuffixes, level.liveSuffixArcs.size());
+				stack.add(level);
+			}
+		}
+		while (!stack.isEmpty()) {
+			finish(stack, queue, topN);
+		}
+		topPrefixes.addAll(queue);
+		Collections.sort(topPrefixes, Collections.reverseOrder(Prefix.BY_EXTENSIONS));
+	}
+
+	/**
+	 * 计算level的各个同时也是前缀的后缀，保存各后缀在FST中紧随分隔符之后的arc。它们或由parent的此类后缀追加当前Token而得，或只包含当前Token。
+	 */
+	private static void liveSuffixes(FST<Long> fst, FST.BytesReader fstReader, FST.Arc<Long> rootArc, Level parent, Level level)
+			throws IOException {
+		if (parent != null) {
+			for (FST.Arc<Long> suffixArc : parent.liveSuffixArcs) {
+				FST.Arc<Long> arc = followToken(fst, fstReader, suffixArc, level.token);
+				if (arc != null) {
+					level.liveSuffixArcs.add(arc);
+				}
+			}
+		}
+		FST.Arc<Long> arc = followToken(fst, fstReader, rootArc, level.token);
+		if (arc != null) {
+			level.liveSuffixArcs.add(arc);
+		}
+	}
+
+	private static FST.Arc<Long> followToken(FST<Long> fst, FST.BytesReader fstReader, FST.Arc<Long> from, String token)
+			throws IOException {
+		FST.Arc<Long> arc = new FST.Arc<Long>().copyFrom(from);
+		for (int i = 0; i < token.length();) {
+			int codePoint = token.codePointAt(i);
+			if (fst.findTargetArc(codePoint, arc, arc, fstReader) == null) {
+				return null;
+			}
+			i += Character.charCount(codePoint);
+		}
+		return fst.findTargetArc(CcWordSet.WORD_SEPARATOR, arc, arc, fstReader);
+	}
+
+	private void splitTokens(IntsRef input, List<String> tokens) {
+		tokens.clear();
+		int tokenStart = input.offset;
+		int end = input.offset + input.length;
+		for (int i = input.offset; i < end; ++i) {
+			int codePoint = input.ints[i];
+			if (codePoint == CcWordSet.WORD_SEPARATOR || codePoint == CcWordSet.WORD_END) {
+				maxCodePointsPerToken = Math.max(maxCodePointsPerToken, i - tokenStart);
+				tokens.add(new String(input.ints, tokenStart, i - tokenStart));
+				tokenStart = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * 结束栈顶的前缀：此后不会再有以它为前缀的词条。
+	 */
+	private void finish(List<Level> stack, PriorityQueue<Prefix> queue, int topN) {
+		Level level = stack.get(stack.size() - 1);
+		prefixCount++;
+		if (level.isEntry) {
+			prefixEntries++;
+			if (level.depth == 1) {
+				singleTokenPrefixEntries++;
+			}
+		}
+		// 只在需要时才还原完整的前缀
+		Prefix prefix = null;
+		if (maxFanOutPrefix == null || level.fanOut > maxFanOutPrefix.fanOut) {
+			prefix = toPrefix(stack);
+			maxFanOutPrefix = prefix;
+		}
+		if (topN > 0 && (queue.size() < topN || Prefix.BY_EXTENSIONS.compare(queue.peek(), level.extensions, level.fanOut) < 0)) {
+			queue.add(prefix != null ? prefix : toPrefix(stack));
+			if (queue.size() > topN) {
+				queue.poll();
+			}
+		}
+		stack.remove(stack.size() - 1);
+	}
+
+	private static Prefix toPrefix(List<Level> stack) {
+		List<String> tokens = new ArrayList<>(stack.size());
+		for (Level level : stack) {
+			tokens.add(level.token);
+		}
+		Level last = stack.get(stack.size() - 1);
+		return new Prefix(Collections.unmodifiableList(tokens), last.extensions, last.fanOut, last.isEntry);
+	}
+
+	/** 词条数量。 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/** 词条的最大Token数。 */
+	public int getMaxTokensPerEntry() {
+		return maxTokensPerEntry;
+	}
+
+	/** 单个Token的最大码点数。 */
+	public int getMaxCodePointsPerToken() {
+		return maxCodePointsPerToken;
+	}
+
+	public double getAverageTokensPerEntry() {
+		return entryCount == 0 ? 0 : (double) totalTokens / entryCount;
+	}
+
+	/** 包含tokenCount个Token的词条数量。 */
+	public int getEntriesWithTokens(int tokenCount) {
+		return tokenCount < tokensPerEntryHistogram.length ? tokensPerEntryHistogram[tokenCount] : 0;
+	}
+
+	/** 单Token词条的数量。此类词条不会产生CC Token。 */
+	public int getSingleTokenEntries() {
+		return singleTokenEntries;
+	}
+
+	/** 同时也是更长词条前缀的单Token词条数量。 */
+	public int getSingleTokenPrefixEntries() {
+		return singleTokenPrefixEntries;
+	}
+
+	/** 同时也是更长词条前缀的词条数量。 */
+	public int getPrefixEntries() {
+		return prefixEntries;
+	}
+
+	/** 不同首Token的数量。 */
+	public int getFirstTokenFanOut() {
+		return firstTokenFanOut;
+	}
+
+	/** 被至少一个更长词条作为前缀的Token前缀数量。 */
+	public int getPrefixCount() {
+		return prefixCount;
+	}
+
+	/**
+	 * 最坏情况下一个输入Token需要推进的匹配数量：之前仍存活的匹配，加上由该Token开启的新匹配。
+	 * <p>
+	 * 对于互不重叠的输入Token（{@link CcAnalyzer} 的分析链即是如此），这是可以达到的精确上界。重叠的Token不推进已有的匹配，
+	 * 却仍会开启新的匹配，此时存活的匹配不再构成同一Token序列的后缀，数量可能超出此值。此值也不包括已结束、等待输出的匹配，因此不是 {@link CcWordsFilter#getPendingOutputsPeak()} 的上界。
+	 */
+	public int getWorstCaseActiveCursors() {
+		return maxLiveSuffixes + 1;
+	}
+
+	/**
+	 * 最坏情况下每个输入Token引起的FST查找次数上界：每个被推进的匹配都要查找Token的所有码点、分隔符以及词条结束符。
+	 */
+	public long getWorstCaseFstStepsPerToken() {
+		return (long) getWorstCaseActiveCursors() * (maxCodePointsPerToken + 2);
+	}
+
+	/** 后继Token种类最多的前缀，词典为空或只有单Token词条时为null。 */
+	public Prefix getMaxFanOutPrefix() {
+		return maxFanOutPrefix;
+	}
+
+	/** 扩展词条最多的前缀，由多到少排列。 */
+	public List<Prefix> getTopPrefixes() {
+		return Collections.unmodifiableList(topPrefixes);
+	}
+
+	/**
+	 * 一个Token前缀的统计。
+	 */
+	public static final class Prefix {
+		static final PrefixComparator BY_EXTENSIONS = new PrefixComparator();
+
+		private final List<String> tokens;
+		private final int extensions;
+		private final int fanOut;
+		private final boolean isEntry;
+
+		Prefix(List<String> tokens, int extensions, int fanOut, boolean isEntry) {
+			this.tokens = tokens;
+			this.extensions = extensions;
+			this.fanOut = fanOut;
+			this.isEntry = isEntry;
+		}
+
+		/** 前缀的各个Token（分析后的形式）。 */
+		public List<String> getTokens() {
+			return tokens;
+		}
+
+		/** 以此为前缀的更长词条数量。 */
+		public int getExtensions() {
+			return extensions;
+		}
+
+		/** 不同后继Token的数量。 */
+		public int getFanOut() {
+			return fanOut;
+		}
+
+		/** 此前缀本身是否也是词条。 */
+		public boolean isEntry() {
+			return isEntry;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (String token : tokens) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(token);
+			}
+			return sb.toString();
+		}
+	}
+
+	static final class PrefixComparator implements Comparator<Prefix> {
+		@Override
+		public int compare(Prefix p1, Prefix p2) {
+			return compare(p1, p2.extensions, p2.fanOut);
+		}
+
+		int compare(Prefix p1, int extensions, int fanOut) {
+			if (p1.extensions != extensions) {
+				return p1.extensions < extensions ? -1 : 1;
+			}
+			return p1.fanOut < fanOut ? -1 : (p1.fanOut == fanOut ? 0 : 1);
+		}
+	}
+
+	/** 遍历路径上的一层，对应路径上前depth个Token组成的前缀。 */
+	private static final class Level {
+		final String token;
+		final int depth;
+		int extensions;
+		int fanOut;
+		String lastChild;
+		boolean isEntry;
+		/** 同时也是前缀的各个后缀在FST中紧随分隔符之后的arc，包括此前缀自身。 */
+		final List<FST.Arc<Long>> liveSuffixArcs = new ArrayList<>(1);
+
+		Level(String token, int depth) {
+			this.token = token;
+			this.depth = depth;
+		}
+	}
+}
@@ -17,74 +17,130 @@
 package com.thihy.analysis.cc;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.CharsRefBuilder;
-import org.apache.lucene.util.IntsRef;
-import org.apache.lucene.util.IntsRefBuilder;
-import org.apache.lucene.util.fst.FST;
-import org.apache.lucene.util.fst.FST.Arc;
-import org.apache.lucene.util.fst.Util;
+import org.apache.lucene.util.UnicodeUtil;
 
 public final class CcWordsFilter extends TokenFilter {
 	public static final String TOKEN_TYPE = "CC";
-
-	private static final String ALPHANUM = StandardTokenizer.TOKEN_TYPES[StandardTokenizer.ALPHANUM];
+	/** 慢分析日志在一个文档中最多统计的起始Token数量。 */
+	private static final int MAX_SLOW_LOG_PREFIXES = 1024;
 
 	private final CcArgs args;
+	/** 未分片词典的匹配器，使用分片词典时为null。 */
+	private final CcWordMatcher matcher;
+	/**
+	 * 各分片的匹配器，只在一个文档内有效：文档中首次用到某分片时从 {@link CcShardedWordSet} 取得分片，文档结束时释放。
+	 * 若跨文档持有，闲置的过滤器会使已被逐出的分片无法回收，分片重新加载后堆中就会同时存在两份。
+	 */
+	private final CcWordMatcher[] shardMatchers;
+	private final boolean[] shardMatchersChecked;
+	/** 已释放的分片匹配器在当前文档中的FST查找次数。 */
+	private long releasedFstSteps = 0;
 
-	private final IntsRefBuilder scratchInfs = new IntsRefBuilder();
-
-	private final FST<Long> fst;
-	private final FST.BytesReader fstReader;
-	private final BytesRefHash fstWords;
 	private final BytesRef scratchWordBytesRef;
-	private final FST.Arc<Long> fstFirstArc;
-	private final FST.Arc<Long> scratchArc, scratchArcOfSep, scatchArcOfEnd;
+	private final CcWordMatcher.Cursor scratchCursor, scratchCursorOfSep, scratchCursorOfEnd;
 
 	private final Queue<PendingOutput> pendingOutputs;
+	/** 已结束的PendingOutput，供后续的输入Token复用，其数量不超过pendingOutputsPeak。 */
+	private final Deque<PendingOutput> freePendingOutputs = new ArrayDeque<>();
 	private int lastEndOffset = -1;
 	private String lastInputType = null;
+	/** 当前文档中pendingOutputs的最大长度，反映了同时活跃的匹配数量。 */
+	private int pendingOutputsPeak = 0;
+	private boolean inputExhausted = false;
+
+	/** 去重模式下匹配到的词条，及已经输出的数量。 */
+	private final CcOrdCounter distinctWords = new CcOrdCounter();
+	private int distinctWordsEmitted = 0;
+
+	/**
+	 * 慢分析日志，以及当前文档的统计。prefixHits记录各起始Token使匹配延续的次数。
+	 * 作为 {@link CcParallelWordsFilter} 的一部分时只统计，由后者汇总整个文档后记录。
+	 */
+	private final CcSlowLog slowLog;
+	private final boolean recordSlowLog;
+	private final CcSlowLogExcerpt slowLogExcerpt;
+	private final Map<CharsRef, int[]> slowLogPrefixHits;
+	private long slowLogNanos = 0;
+	private int inputTokenCount = 0;
+	private int ccTokenCount = 0;
 
 	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 	private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
 	private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
 	private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
 	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final CcTermFrequencyAttribute termFreqAtt = addAttribute(CcTermFrequencyAttribute.class);
+	private final CcPendingOutputsPeakAttribute peakAtt = addAttribute(CcPendingOutputsPeakAttribute.class);
 
 	protected CcWordsFilter(TokenStream input, CcArgs args) {
+		this(input, args, true);
+	}
+
+	CcWordsFilter(TokenStream input, CcArgs args, boolean recordSlowLog) {
 		super(input);
 		this.args = args;
 		//
-		this.fst = args.wordSet.fst;
-		this.fstReader = args.wordSet.fst.getBytesReader();
-		this.fstWords = args.wordSet.words;
-		this.fstFirstArc = new FST.Arc<>();
-		this.fst.getFirstArc(fstFirstArc);
+		if (args.shardedWordSet == null) {
+			this.matcher = new CcWordMatcher(args);
+			this.shardMatchers = null;
+			this.shardMatchersChecked = null;
+		} else {
+			this.matcher = null;
+			this.shardMatchers = new CcWordMatcher[args.shardedWordSet.shardCount()];
+			this.shardMatchersChecked = new boolean[shardMatchers.length];
+		}
 		this.scratchWordBytesRef = new BytesRef();
-		this.scratchArc = new FST.Arc<>();
-		this.scratchArcOfSep = new FST.Arc<>();
-		this.scatchArcOfEnd = new FST.Arc<>();
+		this.scratchCursor = new CcWordMatcher.Cursor();
+		this.scratchCursorOfSep = new CcWordMatcher.Cursor();
+		this.scratchCursorOfEnd = new CcWordMatcher.Cursor();
 		//
 		this.pendingOutputs = new LinkedList<>();
+		//
+		this.slowLog = args.slowLog;
+		this.recordSlowLog = recordSlowLog;
+		this.slowLogExcerpt = slowLog == null || !recordSlowLog ? null : new CcSlowLogExcerpt(slowLog.excerptLength());
+		this.slowLogPrefixHits = slowLog == null ? null : new HashMap<CharsRef, int[]>();
 	}
 
 	@Override
 	public boolean incrementToken() throws IOException {
+		if (slowLog == null) {
+			return nextToken();
+		}
+		long start = System.nanoTime();
+		try {
+			return nextToken();
+		} finally {
+			slowLogNanos += System.nanoTime() - start;
+		}
+	}
+
+	private boolean nextToken() throws IOException {
+		if (args.distinctWords) {
+			return incrementDistinctToken();
+		}
 		while (true) {
 			if (hasPendingTokens()) {
 				flushPendingToken();
@@ -93,125 +149,343 @@ public final class CcWordsFilter extends TokenFilter {
 
 			// ASSERT: no pending tokens
 
-			if (!input.incrementToken()) {
+			if (inputExhausted) {
 				return false;
 			}
+			if (!consumeInputToken()) {
+				// 输入结束，所有未完成的匹配都不可能再继续，需要将其结束以便输出剩余的Token
+				inputExhausted = true;
+				stopPendingOutputs();
+			}
+		}
+	}
 
-			PendingInputToken input = createPendingToken();
-			boolean skipMatch = false;
-			boolean stopMatch = false;
-
-			// 如果之前存在Token，则需要判断是否是连续的，如果产生交集，则不进行词典检测，如果断层，则结束词典检测
-			if (lastEndOffset >= 0) {
-				int currentStartOffset = input.startOffset;
-				if (currentStartOffset < lastEndOffset) {
-					skipMatch = true;
-				} else if (currentStartOffset > lastEndOffset) {
-					// 当存在英文单词，则允许结束1个偏移量。
-					if (currentStartOffset - lastEndOffset == 1 && (lastInputType == ALPHANUM || input.type == ALPHANUM)) {
-						// OK
-					} else {
-						stopMatch = true;
-					}
+	/**
+	 * 去重模式：先读取全部输入，只记录匹配到的词条，然后每个词条输出一次。
+	 */
+	private boolean incrementDistinctToken() throws IOException {
+		if (!inputExhausted) {
+			while (consumeInputToken()) {
+				while (!pendingOutputs.isEmpty() && !pendingOutputs.peek().matching) {
+					releasePendingOutput();
 				}
 			}
-			lastEndOffset = input.endOffset;
-			lastInputType = input.type;
-
-			//
-			if (!skipMatch) {
-				for (Iterator<PendingOutput> pendingOutputsIter = pendingOutputs.iterator(); pendingOutputsIter.hasNext();) {
-					PendingOutput pendingOutput = pendingOutputsIter.next();
-					if (stopMatch) {
-						pendingOutput.arc = null;
-					} else {
-						processPendingOutput(input, pendingOutput, true);
-					}
+			inputExhausted = true;
+			releasePendingOutputs();
+		}
+		if (distinctWordsEmitted >= distinctWords.size()) {
+			return false;
+		}
+		int index = distinctWordsEmitted++;
+		clearAttributes();
+		if (args.shardedWordSet == null) {
+			args.wordSet.words.get(distinctWords.ord(index), scratchWordBytesRef);
+			termAtt.resizeBuffer(scratchWordBytesRef.length);
+			termAtt.setLength(UnicodeUtil.UTF8toUTF16(scratchWordBytesRef, termAtt.buffer()));
+		} else {
+			termAtt.append(args.shardedWordSet.word(distinctWords.ord(index)));
+		}
+		typeAtt.setType(TOKEN_TYPE);
+		offsetAtt.setOffset(distinctWords.startOffset(index), distinctWords.endOffset(index));
+		termFreqAtt.setTermFrequency(distinctWords.count(index));
+		ccTokenCount++;
+		return true;
+	}
+
+	/**
+	 * 读取一个输入Token并推进所有未完成的匹配。
+	 *
+	 * @return 输入已结束时返回false
+	 */
+	private boolean consumeInputToken() throws IOException {
+		if (!input.incrementToken()) {
+			return false;
+		}
+
+		PendingInputToken input = createPendingToken();
+		inputTokenCount++;
+		if (slowLogExcerpt != null) {
+			slowLogExcerpt.addToken(input.text.chars, input.text.offset, input.text.length, input.startOffset);
+		}
+		int continuity = CcWordMatcher.continuity(lastEndOffset, lastInputType, input.startOffset, input.type);
+		boolean skipMatch = continuity == CcWordMatcher.SKIP;
+		boolean stopMatch = continuity == CcWordMatcher.STOP;
+		lastEndOffset = input.endOffset;
+		lastInputType = input.type;
+
+		//
+		if (!skipMatch) {
+			for (Iterator<PendingOutput> pendingOutputsIter = pendingOutputs.iterator(); pendingOutputsIter.hasNext();) {
+				PendingOutput pendingOutput = pendingOutputsIter.next();
+				if (stopMatch) {
+					pendingOutput.matching = false;
+				} else {
+					processPendingOutput(input, pendingOutput, true);
 				}
 			}
-			//
-			PendingOutput pendingOutput = new PendingOutput(input.startOffset, input.positionIncrement, input.positionLength);
-			pendingOutput.arc.copyFrom(fstFirstArc);
+		}
+		//
+		PendingOutput pendingOutput = freePendingOutputs.poll();
+		if (pendingOutput == null) {
+			pendingOutput = new PendingOutput();
+		}
+		pendingOutput.init(input.startOffset, input.positionIncrement);
+		if (slowLog != null) {
+			pendingOutput.firstToken = input.text;
+		}
+		pendingOutput.matcher = matcherOf(input.text);
+		if (pendingOutput.matcher == null) {
+			pendingOutput.matching = false;
+		} else {
+			pendingOutput.matcher.copyFirst(pendingOutput);
 			processPendingOutput(input, pendingOutput, false);
+		}
+		if (!args.distinctWords) {
 			pendingOutput.tokens.add(new PendingOutputToken(input));
-			this.pendingOutputs.add(pendingOutput);
 		}
+		this.pendingOutputs.add(pendingOutput);
+		if (pendingOutputs.size() > pendingOutputsPeak) {
+			pendingOutputsPeak = pendingOutputs.size();
+		}
+		return true;
 	}
 
-	private void processPendingOutput(PendingInputToken input, PendingOutput pendingOutput, boolean matchEnd) throws IOException {
-		if (pendingOutput.arc == null) {
+	/**
+	 * 返回以token开始的匹配所用的匹配器。
+	 *
+	 * @return 对应的分片中没有词条时返回null
+	 */
+	private CcWordMatcher matcherOf(CharsRef token) throws IOException {
+		if (matcher != null) {
+			return matcher;
+		}
+		if (token.length == 0) {
+			return null;
+		}
+		int firstCodePoint = Character.codePointAt(token.chars, token.offset, token.offset + token.length);
+		if (args.folding != null) {
+			firstCodePoint = args.folding.fold(firstCodePoint);
+		}
+		int shard = args.shardedWordSet.shardOf(firstCodePoint);
+		if (!shardMatchersChecked[shard]) {
+			// 按需加载分片，同时刷新了分片的访问时间
+			CcWordSet shardWordSet = args.shardedWordSet.shard(shard);
+			if (shardWordSet != null) {
+				shardMatchers[shard] = new CcWordMatcher(shardWordSet, args.folding, args.shardedWordSet.ordBase(shard));
+			}
+			shardMatchersChecked[shard] = true;
+		}
+		return shardMatchers[shard];
+	}
+
+	/**
+	 * 释放当前文档用到的分片匹配器，使被逐出的分片可以回收。
+	 */
+	private void releaseShardMatchers() {
+		if (shardMatchers == null) {
 			return;
 		}
+		for (int shard = 0; shard < shardMatchers.length; ++shard) {
+			if (shardMatchers[shard] != null) {
+				releasedFstSteps += shardMatchers[shard].fstSteps();
+				shardMatchers[shard] = null;
+			}
+			shardMatchersChecked[shard] = false;
+		}
+	}
 
-		scratchArc.copyFrom(pendingOutput.arc);
-		FST.Arc<Long> arcOfSep = null;
-		FST.Arc<Long> arcOfEnd = null;
+	/**
+	 * 由 {@link CcAnalyzer} 设置，用于从原文中截取慢分析日志的摘要。
+	 */
+	void setSlowLogExcerptReader(CcSlowLogExcerpt.CaptureReader reader) {
+		if (slowLogExcerpt != null) {
+			slowLogExcerpt.setReader(reader);
+		}
+	}
 
-		Arc<Long> arcOfToken = matchToken(scratchArc, input.text);
-		if (arcOfToken == null) {
-			pendingOutput.arc = null;
-			return;
+	long fstSteps() {
+		if (matcher != null) {
+			return matcher.fstSteps();
 		}
+		long fstSteps = releasedFstSteps;
+		for (CcWordMatcher shardMatcher : shardMatchers) {
+			if (shardMatcher != null) {
+				fstSteps += shardMatcher.fstSteps();
+			}
+		}
+		return fstSteps;
+	}
 
-		scratchArcOfSep.copyFrom(arcOfToken);
-		arcOfSep = matchSeparator(scratchArcOfSep);
-		if (arcOfSep == null) {
-			pendingOutput.arc = null;
-		} else {
-			pendingOutput.arc.copyFrom(arcOfSep);
-			pendingOutput.positionLength += input.positionLength;
+	private void releasePendingOutput() {
+		PendingOutput pendingOutput = pendingOutputs.poll();
+		pendingOutput.matcher = null;
+		pendingOutput.firstToken = null;
+		pendingOutput.tokens.clear();
+		freePendingOutputs.push(pendingOutput);
+	}
+
+	private void releasePendingOutputs() {
+		while (!pendingOutputs.isEmpty()) {
+			releasePendingOutput();
 		}
+	}
 
-		if (matchEnd) {
-			scatchArcOfEnd.copyFrom(arcOfToken);
-			arcOfEnd = matchEnd(scatchArcOfEnd);
+	private void stopPendingOutputs() {
+		for (PendingOutput pendingOutput : pendingOutputs) {
+			pendingOutput.matching = false;
+		}
+	}
 
-			if (arcOfEnd != null) {
-				int wordsOrd = arcOfEnd.output.intValue();
-				this.fstWords.get(wordsOrd, scratchWordBytesRef);
-				CharsRefBuilder charsRef = new CharsRefBuilder();
-				charsRef.copyUTF8Bytes(scratchWordBytesRef);
-				CharsRef text = charsRef.get();
-				String type = TOKEN_TYPE;
-				int endOffset = input.endOffset;
-				int positionIncrement = pendingOutput.positionIncrement;
-				int positionLength = pendingOutput.positionLength;
-				PendingOutputToken token = new PendingOutputToken(text, type, endOffset, positionIncrement, positionLength);
-				pendingOutput.tokens.add(token);
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		releasePendingOutputs();
+		lastEndOffset = -1;
+		lastInputType = null;
+		pendingOutputsPeak = 0;
+		inputExhausted = false;
+		distinctWords.clear();
+		distinctWordsEmitted = 0;
+		slowLogNanos = 0;
+		if (matcher != null) {
+			matcher.resetFstSteps();
+		} else {
+			releaseShardMatchers();
+			releasedFstSteps = 0;
+		}
+		inputTokenCount = 0;
+		ccTokenCount = 0;
+		if (slowLog != null) {
+			slowLogPrefixHits.clear();
+		}
+		if (slowLogExcerpt != null) {
+			slowLogExcerpt.reset();
+		}
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		peakAtt.setPendingOutputsPeak(pendingOutputsPeak);
+		if (slowLog != null && recordSlowLog) {
+			long fstSteps = fstSteps();
+			if (slowLog.isSlow(slowLogNanos, fstSteps)) {
+				slowLog.record(slowLogNanos, fstSteps, inputTokenCount, ccTokenCount, pendingOutputsPeak, slowLogExcerpt.get(),
+						hotPrefixes(slowLogPrefixHits, slowLog.hotPrefixes()));
 			}
 		}
+		releasePendingOutputs();
+		releaseShardMatchers();
 	}
 
-	private FST.Arc<Long> matchToken(FST.Arc<Long> asc, CharsRef text) throws IOException {
-		IntsRef intsRef = Util.toUTF32(text, scratchInfs);
-		Long pendingOutput = asc.output;
-		for (int intsRefIndex = 0; intsRefIndex < intsRef.length; ++intsRefIndex) {
-			if (fst.findTargetArc(intsRef.ints[intsRef.offset + intsRefIndex], asc, asc, fstReader) == null) {
-				return null;
+	@Override
+	public void close() throws IOException {
+		releasePendingOutputs();
+		releaseShardMatchers();
+		super.close();
+	}
+
+	long slowLogNanos() {
+		return slowLogNanos;
+	}
+
+	int inputTokenCount() {
+		return inputTokenCount;
+	}
+
+	int ccTokenCount() {
+		return ccTokenCount;
+	}
+
+	Map<CharsRef, int[]> slowLogPrefixHits() {
+		return slowLogPrefixHits;
+	}
+
+	static List<String> hotPrefixes(Map<CharsRef, int[]> prefixHits, int count) {
+		List<Map.Entry<CharsRef, int[]>> entries = new ArrayList<>(prefixHits.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<CharsRef, int[]>>() {
+
+			@Override
+			public int compare(Map.Entry<CharsRef, int[]> e1, Map.Entry<CharsRef, int[]> e2) {
+				return Integer.compare(e2.getValue()[0], e1.getValue()[0]);
 			}
-			pendingOutput = fst.outputs.add(pendingOutput, asc.output);
+		});
+		List<String> hotPrefixes = new ArrayList<>(Math.min(count, entries.size()));
+		for (int i = 0; i < count && i < entries.size(); ++i) {
+			hotPrefixes.add(entries.get(i).getKey() + "=" + entries.get(i).getValue()[0]);
 		}
-		asc.output = pendingOutput;
-		return asc;
+		return hotPrefixes;
 	}
 
-	private FST.Arc<Long> matchSeparator(FST.Arc<Long> asc) throws IOException {
-		Long pendingOutput = asc.output;
-		if (fst.findTargetArc(CcWordSet.WORD_SEPARATOR, asc, asc, fstReader) == null) {
-			return null;
+	private void countPrefixHit(CharsRef firstToken) {
+		addPrefixHits(slowLogPrefixHits, firstToken, 1);
+	}
+
+	static void addPrefixHits(Map<CharsRef, int[]> prefixHits, CharsRef firstToken, int count) {
+		int[] hits = prefixHits.get(firstToken);
+		if (hits == null) {
+			if (prefixHits.size() >= MAX_SLOW_LOG_PREFIXES) {
+				return;
+			}
+			hits = new int[1];
+			prefixHits.put(firstToken, hits);
 		}
-		asc.output = fst.outputs.add(pendingOutput, asc.output);
-		return asc;
+		hits[0] += count;
 	}
 
-	private FST.Arc<Long> matchEnd(FST.Arc<Long> asc) throws IOException {
-		Long pendingOutput = asc.output;
-		if (fst.findTargetArc(CcWordSet.WORD_END, asc, asc, fstReader) == null) {
-			return null;
+	/**
+	 * 返回自上次 {@link #reset()} 以来pendingOutputs的最大长度。分析链末端不确定时，应改用 {@link CcPendingOutputsPeakAttribute} 。
+	 */
+	public int getPendingOutputsPeak() {
+		return pendingOutputsPeak;
+	}
+
+	private void processPendingOutput(PendingInputToken input, PendingOutput pendingOutput, boolean matchEnd) throws IOException {
+		if (!pendingOutput.matching) {
+			return;
+		}
+
+		CcWordMatcher.Cursor cursorOfToken = scratchCursor.copyFrom(pendingOutput);
+		CcWordMatcher matcher = pendingOutput.matcher;
+		if (!matcher.matchToken(cursorOfToken, input.text.chars, input.text.offset, input.text.length)) {
+			pendingOutput.matching = false;
+			return;
+		}
+		if (matchEnd && slowLog != null) {
+			countPrefixHit(pendingOutput.firstToken);
+		}
+
+		// 包含当前Token在内，此匹配已覆盖的位置数
+		int matchedPositionLength = pendingOutput.positionLength + input.positionLength;
+
+		CcWordMatcher.Cursor cursorOfSep = scratchCursorOfSep.copyFrom(cursorOfToken);
+		if (!matcher.matchSeparator(cursorOfSep)) {
+			pendingOutput.matching = false;
+		} else {
+			pendingOutput.copyFrom(cursorOfSep);
+			pendingOutput.positionLength = matchedPositionLength;
+		}
+
+		if (matchEnd) {
+			CcWordMatcher.Cursor cursorOfEnd = scratchCursorOfEnd.copyFrom(cursorOfToken);
+			if (matcher.matchEnd(cursorOfEnd)) {
+				int wordsOrd = cursorOfEnd.ord();
+				if (args.distinctWords) {
+					distinctWords.add(matcher.ordBase() + wordsOrd, pendingOutput.startOffset, input.endOffset);
+					return;
+				}
+				matcher.wordSet().words.get(wordsOrd, scratchWordBytesRef);
+				CharsRefBuilder charsRef = new CharsRefBuilder();
+				charsRef.copyUTF8Bytes(scratchWordBytesRef);
+				CharsRef text = charsRef.get();
+				String type = TOKEN_TYPE;
+				int endOffset = input.endOffset;
+				int positionIncrement = pendingOutput.positionIncrement;
+				int positionLength = matchedPositionLength;
+				PendingOutputToken token = new PendingOutputToken(text, type, endOffset, positionIncrement, positionLength);
+				pendingOutput.tokens.add(token);
+			}
 		}
-		pendingOutput = fst.outputs.add(pendingOutput, asc.output);
-		asc.output = fst.outputs.add(pendingOutput, asc.nextFinalOutput);
-		return asc;
 	}
 
 	private PendingInputToken createPendingToken() {
@@ -234,8 +508,8 @@ public final class CcWordsFilter extends TokenFilter {
 				return false;
 			}
 			if (firstPendingOutput.tokens.isEmpty()) {
-				if (firstPendingOutput.arc == null) {
-					pendingOutputs.poll();
+				if (!firstPendingOutput.matching) {
+					releasePendingOutput();
 				} else {
 					return false;
 				}
@@ -243,7 +517,7 @@ public final class CcWordsFilter extends TokenFilter {
 				if (args.mostTokens) {
 					return true;
 				} else {
-					return firstPendingOutput.arc == null;
+					return !firstPendingOutput.matching;
 				}
 			}
 		}
@@ -264,21 +538,30 @@ public final class CcWordsFilter extends TokenFilter {
 		posIncrAtt.setPositionIncrement(token.positionIncrement);
 		posLenAtt.setPositionLength(token.positionLength);
 		offsetAtt.setOffset(firstPendingOutput.startOffset, token.endOffset);
+		if (token.type == TOKEN_TYPE) {
+			ccTokenCount++;
+		}
 	}
 
-	private static class PendingOutput {
-		public final int startOffset;
-		public final int positionIncrement;
+	/** 未完成的匹配，其自身即为匹配位置，以免每个输入Token再多分配一个对象。结束后由过滤器回收复用。 */
+	private static class PendingOutput extends CcWordMatcher.Cursor {
+		public int startOffset;
+		public int positionIncrement;
+		/** 已匹配的Token所覆盖的位置数 */
 		public int positionLength;
-		public FST.Arc<Long> arc;
-		public final Deque<PendingOutputToken> tokens;
-
-		public PendingOutput(int startOffset, int positionIncrement, int positionLength) {
+		/** 匹配是否仍在进行。 */
+		public boolean matching;
+		/** 此匹配所用的匹配器，由起始Token决定。 */
+		public CcWordMatcher matcher;
+		public final Deque<PendingOutputToken> tokens = new LinkedList<>();
+		/** 起始Token，仅在启用慢分析日志时记录。 */
+		public CharsRef firstToken;
+
+		void init(int startOffset, int positionIncrement) {
 			this.startOffset = startOffset;
 			this.positionIncrement = positionIncrement;
-			this.positionLength = positionLength;
-			this.arc = new FST.Arc<>();
-			this.tokens = new LinkedList<>();
+			this.positionLength = 0;
+			this.matching = true;
 		}
 	}
 
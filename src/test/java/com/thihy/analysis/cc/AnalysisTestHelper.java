@@ -18,17 +18,21 @@ package com.thihy.analysis.cc;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.CharsRefBuilder;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.Maps;
@@ -38,6 +42,57 @@ import com.google.common.collect.Tables;
 public class AnalysisTestHelper {
 	private static final int PADDING_WIDTH = 4;
 
+	public static Analyzer createCcAnalyzer(final CcArgs args) {
+		return new CcAnalyzer(args);
+	}
+
+	public static CcWordSet createWordSet(String[] words) throws IOException {
+		Analyzer analyzer = createWordSetAnalyzer();
+		CharsRefBuilder textCharsRefBuilder = new CharsRefBuilder();
+		CcWordSet.Builder ccWordSetBuilder = new CcWordSet.Builder();
+		for (String word : words) {
+			CharsRef charsRef = analyze(analyzer, word);
+			textCharsRefBuilder.clear();
+			textCharsRefBuilder.append(word);
+			ccWordSetBuilder.add(charsRef, textCharsRefBuilder.get());
+		}
+		return ccWordSetBuilder.build();
+	}
+
+	public static Analyzer createWordSetAnalyzer() {
+		return CcAnalyzer.newWordSetAnalyzer();
+	}
+
+	public static CharsRef analyze(Analyzer analyzer, String text) throws IOException {
+		return CcAnalyzer.analyzeWord(analyzer, text);
+	}
+
+	/**
+	 * 将TokenStream的结果转换为“term/type/startOffset-endOffset/posInc/posLen”形式的字符串列表，便于断言比较。
+	 */
+	public static List<String> tokenStrings(TokenStream ts) throws IOException {
+		CharTermAttribute termAttr = ts.addAttribute(CharTermAttribute.class);
+		TypeAttribute typeAttr = ts.addAttribute(TypeAttribute.class);
+		OffsetAttribute offAttr = ts.addAttribute(OffsetAttribute.class);
+		PositionIncrementAttribute posIncAttr = ts.addAttribute(PositionIncrementAttribute.class);
+		PositionLengthAttribute posLenAttr = ts.addAttribute(PositionLengthAttribute.class);
+		List<String> tokens = new ArrayList<>();
+		ts.reset();
+		while (ts.incrementToken()) {
+			tokens.add(termAttr.toString() + "/" + typeAttr.type() + "/" + offAttr.startOffset() + "-" + offAttr.endOffset() + "/"
+					+ posIncAttr.getPositionIncrement() + "/" + posLenAttr.getPositionLength());
+		}
+		ts.end();
+		tokens.add("end/" + offAttr.endOffset());
+		return tokens;
+	}
+
+	public static List<String> tokenStrings(Analyzer analyzer, String text) throws IOException {
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			return tokenStrings(ts);
+		}
+	}
+
 	public static void printResultOfTokenStream(PrintStream out, TokenStream ts) throws IOException {
 		CharTermAttribute termAttr = ts.getAttribute(CharTermAttribute.class);
 		TypeAttribute typeAttr = ts.getAttribute(TypeAttribute.class);
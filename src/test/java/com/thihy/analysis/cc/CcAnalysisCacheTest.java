@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Test;
+
+public class CcAnalysisCacheTest {
+
+	@Test
+	public void testReplayEqualsAnalysis() throws IOException {
+		final String[] words = { "U", "U盘", "AU" };
+		final String[] texts = { "U盘", "u盘是个好东西", "A U 盘", "U盘" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		for (boolean mostTokens : new boolean[] { false, true }) {
+			Analyzer ccAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens));
+			CcAnalysisCache cache = new CcAnalysisCache(1 << 20);
+			for (int round = 0; round < 2; ++round) {
+				for (String text : texts) {
+					try (TokenStream ts = cache.tokenStream(ccAnalyzer, "", text)) {
+						assertThat(AnalysisTestHelper.tokenStrings(ts), equalTo(AnalysisTestHelper.tokenStrings(ccAnalyzer, text)));
+					}
+				}
+			}
+			assertThat(cache.size(), equalTo(3L));
+			assertThat(cache.stats().hitCount(), equalTo(5L));
+		}
+	}
+
+	@Test
+	public void testSharedBetweenWordSets() throws IOException {
+		CcWordSet oldWordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘" });
+		CcWordSet newWordSet = AnalysisTestHelper.createWordSet(new String[] { "好东西" });
+		Analyzer oldAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(oldWordSet, false));
+		Analyzer newAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(newWordSet, false));
+		CcAnalysisCache cache = new CcAnalysisCache(1 << 20);
+		String text = "u盘是个好东西";
+
+		for (int round = 0; round < 2; ++round) {
+			try (TokenStream ts = cache.tokenStream(oldAnalyzer, "", text)) {
+				assertThat(AnalysisTestHelper.tokenStrings(ts), equalTo(AnalysisTestHelper.tokenStrings(oldAnalyzer, text)));
+			}
+			try (TokenStream ts = cache.tokenStream(newAnalyzer, "", text)) {
+				assertThat(AnalysisTestHelper.tokenStrings(ts), equalTo(AnalysisTestHelper.tokenStrings(newAnalyzer, text)));
+			}
+		}
+		// 交替使用两个词典不会互相清空
+		assertThat(cache.size(), equalTo(2L));
+		assertThat(cache.stats().hitCount(), equalTo(2L));
+	}
+
+	@Test
+	public void testSharedBetweenArgs() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U", "U盘", "U盘 套" });
+		Analyzer[] analyzers = { AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false)),
+				AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, true)) };
+		CcAnalysisCache cache = new CcAnalysisCache(1 << 20);
+		String text = "u盘套";
+
+		// 同一词典、不同配置的分析器不会重放彼此的结果
+		for (int round = 0; round < 2; ++round) {
+			for (Analyzer analyzer : analyzers) {
+				try (TokenStream ts = cache.tokenStream(analyzer, "", text)) {
+					assertThat(AnalysisTestHelper.tokenStrings(ts), equalTo(AnalysisTestHelper.tokenStrings(analyzer, text)));
+				}
+			}
+		}
+		assertThat(cache.size(), equalTo(2L));
+		assertThat(cache.stats().hitCount(), equalTo(2L));
+	}
+
+	@Test
+	public void testReplayDistinctWords() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘", "移动 硬盘" });
+		Analyzer ccAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false, null, true));
+		CcAnalysisCache cache = new CcAnalysisCache(1 << 20);
+		String text = "u盘和移动硬盘，还有u盘";
+
+		List<String> expected = ccTokenStrings(ccAnalyzer.tokenStream("", text));
+		assertThat(expected.get(0), equalTo("U盘/2"));
+		for (int round = 0; round < 2; ++round) {
+			assertThat(ccTokenStrings(cache.tokenStream(ccAnalyzer, "", text)), equalTo(expected));
+		}
+		assertThat(cache.stats().hitCount(), equalTo(1L));
+	}
+
+	/** “term/tf”形式的Token列表，最后附上“peak/结束时的待输出峰值”。 */
+	private static List<String> ccTokenStrings(TokenStream tokenStream) throws IOException {
+		List<String> tokens = new ArrayList<>();
+		try (TokenStream ts = tokenStream) {
+			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+			CcTermFrequencyAttribute termFreqAtt = ts.addAttribute(CcTermFrequencyAttribute.class);
+			CcPendingOutputsPeakAttribute peakAtt = ts.addAttribute(CcPendingOutputsPeakAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				tokens.add(termAtt + "/" + termFreqAtt.getTermFrequency());
+			}
+			ts.end();
+			tokens.add("peak/" + peakAtt.getPendingOutputsPeak());
+		}
+		return tokens;
+	}
+}
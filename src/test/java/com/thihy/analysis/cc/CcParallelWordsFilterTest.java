@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+public class CcParallelWordsFilterTest {
+
+	@Test
+	public void testSameAsSerial() throws IOException {
+		final String[] words = { "U盘", "U盘是", "AU", "好东西", "东西", "a b c", "b c d" };
+		final String[] pieces = { "U盘", "是个", "好东西", "A U", "a b c d", "，", "。", " ", "东", "西", "x" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2000; ++i) {
+			text.append(pieces[random.nextInt(pieces.length)]);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (boolean mostTokens : new boolean[] { false, true }) {
+				CcArgs args = new CcArgs(wordSet, mostTokens);
+				Analyzer serialAnalyzer = new CcAnalyzer(args);
+				for (int minChunkTokens : new int[] { 1, 7, 100, 100000 }) {
+					Analyzer parallelAnalyzer = new CcAnalyzer(args, executor, minChunkTokens, 0);
+					for (int round = 0; round < 2; ++round) {
+						assertThat(AnalysisTestHelper.tokenStrings(parallelAnalyzer, text.toString()),
+								equalTo(AnalysisTestHelper.tokenStrings(serialAnalyzer, text.toString())));
+						assertThat(pendingOutputsPeak(parallelAnalyzer, text.toString()),
+								equalTo(pendingOutputsPeak(serialAnalyzer, text.toString())));
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSmallDocumentsStaySerial() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘", "好东西" });
+		CcArgs args = new CcArgs(wordSet, false);
+		CountingExecutor executor = new CountingExecutor();
+		try {
+			Analyzer serialAnalyzer = new CcAnalyzer(args);
+			Analyzer parallelAnalyzer = new CcAnalyzer(args, executor, 1, 100);
+			String text = "u盘，是个。好东西";
+			for (int round = 0; round < 3; ++round) {
+				assertThat(AnalysisTestHelper.tokenStrings(parallelAnalyzer, text),
+						equalTo(AnalysisTestHelper.tokenStrings(serialAnalyzer, text)));
+			}
+			assertThat(executor.submitted.get(), equalTo(0));
+
+			StringBuilder largeText = new StringBuilder();
+			for (int i = 0; i < 50; ++i) {
+				largeText.append(text).append('\n');
+			}
+			assertThat(AnalysisTestHelper.tokenStrings(parallelAnalyzer, largeText.toString()),
+					equalTo(AnalysisTestHelper.tokenStrings(serialAnalyzer, largeText.toString())));
+			assertThat(executor.submitted.get(), greaterThan(1));
+			// 回到小文档后重新创建串行过滤器
+			assertThat(AnalysisTestHelper.tokenStrings(parallelAnalyzer, text),
+					equalTo(AnalysisTestHelper.tokenStrings(serialAnalyzer, text)));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSlowLogOncePerDocument() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "移动 硬盘", "移动 电源" });
+		CcSlowLog slowLog = new CcSlowLog.Builder().threshold(0, TimeUnit.NANOSECONDS).build();
+		CcArgs args = new CcArgs(wordSet, false, null, false, slowLog);
+		String text = "  U盘，移动硬盘。移动电源 移动硬盘";
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int minParallelTokens : new int[] { 0, 1000 }) {
+				Analyzer parallelAnalyzer = new CcAnalyzer(args, executor, 1, minParallelTokens);
+				AnalysisTestHelper.tokenStrings(parallelAnalyzer, text);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		final List<CcSlowLog.Sample> samples = new ArrayList<>();
+		slowLog.drain(new CcSlowLog.Reporter() {
+
+			@Override
+			public void report(CcSlowLog.Sample sample) {
+				samples.add(sample);
+			}
+		});
+		// 并行与串行各一个文档，每个文档只记录一次，统计覆盖所有块
+		assertThat(samples.size(), equalTo(2));
+		for (CcSlowLog.Sample sample : samples) {
+			assertThat(sample.getExcerpt(), equalTo("U盘，移动硬盘。移动电源 移动硬盘"));
+			assertThat(sample.getInputTokens(), equalTo(14));
+			assertThat(sample.getCcTokens(), equalTo(3));
+			// 三个匹配各延续三次
+			assertThat(sample.getHotPrefixes(), contains("移=9"));
+			assertThat(sample.getElapsed(TimeUnit.NANOSECONDS), greaterThan(0L));
+		}
+	}
+
+	private static final class CountingExecutor extends ThreadPoolExecutor {
+		final AtomicInteger submitted = new AtomicInteger();
+
+		CountingExecutor() {
+			super(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			submitted.incrementAndGet();
+			super.execute(command);
+		}
+	}
+
+	private static int pendingOutputsPeak(Analyzer analyzer, String text) throws IOException {
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			CcPendingOutputsPeakAttribute peakAtt = ts.getAttribute(CcPendingOutputsPeakAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				assertThat(peakAtt.getPendingOutputsPeak(), equalTo(0));
+			}
+			ts.end();
+			return peakAtt.getPendingOutputsPeak();
+		}
+	}
+}
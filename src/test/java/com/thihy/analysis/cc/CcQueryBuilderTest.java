@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+public class CcQueryBuilderTest {
+
+	@Test
+	public void testCreateQuery() throws IOException {
+		final String[] words = { "U盘", "移动 硬盘", "硬盘 是 好", "好 东西" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		for (boolean mostTokens : new boolean[] { false, true }) {
+			Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens));
+			CcQueryBuilder builder = new CcQueryBuilder(BooleanClause.Occur.MUST);
+
+			Query query = builder.createQuery(analyzer, "f", "u盘和移动硬盘是好东西");
+			assertThat(query.toString(), equalTo("+f:U盘 +f:和 +f:移动 硬盘 +f:硬盘 是 好 +f:好 东西"));
+			Query cached = builder.createQuery(analyzer, "f", "u盘和移动硬盘是好东西");
+			assertThat(cached, equalTo(query));
+			assertThat(cached, not(sameInstance(query)));
+			assertThat(builder.stats().hitCount(), equalTo(1L));
+
+			assertThat(builder.createQuery(analyzer, "f", "移动硬盘"), instanceOf(TermQuery.class));
+			assertThat(builder.createQuery(analyzer, "f", "天气").toString(), equalTo("+f:天 +f:气"));
+			// 没有Token的结果也被缓存
+			assertThat(builder.createQuery(analyzer, "f", "，"), nullValue());
+			assertThat(builder.createQuery(analyzer, "f", "，"), nullValue());
+			assertThat(builder.stats().hitCount(), equalTo(2L));
+			assertThat(builder.size(), equalTo(4L));
+		}
+	}
+
+	@Test
+	public void testCachedQueryNotShared() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "移动 硬盘" });
+		Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, true));
+		CcQueryBuilder builder = new CcQueryBuilder(BooleanClause.Occur.SHOULD);
+
+		// 修改返回的查询及其子查询不影响之后返回的查询
+		BooleanQuery query = (BooleanQuery) builder.createQuery(analyzer, "f", "u盘和移动硬盘");
+		String expected = query.toString();
+		query.clauses().get(0).setOccur(BooleanClause.Occur.MUST_NOT);
+		query.clauses().get(1).getQuery().setBoost(2);
+		query.add(new TermQuery(new Term("f", "x")), BooleanClause.Occur.SHOULD);
+		assertThat(builder.createQuery(analyzer, "f", "u盘和移动硬盘").toString(), equalTo(expected));
+		assertThat(builder.stats().hitCount(), equalTo(1L));
+	}
+
+	@Test
+	public void testSharedBetweenAnalyzers() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "移动 硬盘" });
+		CcWordSet newWordSet = AnalysisTestHelper.createWordSet(new String[] { "硬盘" });
+		Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false));
+		Analyzer distinctAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false, null, true));
+		Analyzer newAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(newWordSet, false));
+		CcQueryBuilder builder = new CcQueryBuilder(BooleanClause.Occur.MUST);
+
+		for (int round = 0; round < 2; ++round) {
+			assertThat(builder.createQuery(analyzer, "f", "移动硬盘和电源").toString(), equalTo("+f:移动 硬盘 +f:和 +f:电 +f:源"));
+			// 同一词典、不同配置的分析器不会得到彼此的结果
+			assertThat(builder.createQuery(distinctAnalyzer, "f", "移动硬盘和电源").toString(), equalTo("f:移动 硬盘"));
+			// 词典切换后不会返回旧词典的结果
+			assertThat(builder.createQuery(newAnalyzer, "f", "移动硬盘和电源").toString(), equalTo("+f:移 +f:动 +f:硬盘 +f:和 +f:电 +f:源"));
+		}
+		assertThat(builder.size(), equalTo(3L));
+		assertThat(builder.stats().hitCount(), equalTo(3L));
+	}
+
+	@Test
+	public void testQueryMatchesIndexedText() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘", "移动 硬盘", "硬盘 是 好" });
+		for (boolean mostTokens : new boolean[] { false, true }) {
+			Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens));
+			try (RAMDirectory dir = new RAMDirectory()) {
+				try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LATEST, analyzer))) {
+					Document doc = new Document();
+					doc.add(new TextField("f", "我的U盘和移动硬盘是好东西", Field.Store.NO));
+					writer.addDocument(doc);
+					doc = new Document();
+					doc.add(new TextField("f", "移动的硬盘", Field.Store.NO));
+					writer.addDocument(doc);
+				}
+				CcQueryBuilder builder = new CcQueryBuilder(BooleanClause.Occur.MUST);
+				try (DirectoryReader reader = DirectoryReader.open(dir)) {
+					IndexSearcher searcher = new IndexSearcher(reader);
+					assertThat(searcher.search(builder.createQuery(analyzer, "f", "移动硬盘"), 10).totalHits, equalTo(1));
+					assertThat(searcher.search(builder.createQuery(analyzer, "f", "U盘 移动硬盘"), 10).totalHits, equalTo(1));
+					// mostTokens=false时，CC Token取代了其首个Token，“硬”不在第一个文档的索引中
+					assertThat(searcher.search(builder.createQuery(analyzer, "f", "硬盘"), 10).totalHits, equalTo(mostTokens ? 2 : 1));
+				}
+			}
+		}
+	}
+}
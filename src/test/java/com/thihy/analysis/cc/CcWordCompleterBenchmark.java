@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.util.CharsRef;
+
+/**
+ * 比较 {@link CcWordCompleter} 与朴素扫描的前缀补全耗时。不属于单元测试，需手动运行：
+ *
+ * <pre>
+ * java com.thihy.analysis.cc.CcWordCompleterBenchmark [entryCount] [queryCount] [maxCount]
+ * </pre>
+ *
+ * 默认构造500万个随机的两Token词条，Builder本身需要较大的堆（建议 -Xmx4g 以上）。
+ */
+public class CcWordCompleterBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int entryCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+		int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int maxCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		Random random = new Random(42);
+
+		System.out.println("building " + entryCount + " entries...");
+		String[] analyzedEntries = new String[entryCount];
+		CcWordSet.Builder builder = new CcWordSet.Builder();
+		for (int i = 0; i < entryCount; ++i) {
+			String analyzed = randomToken(random) + CcWordSet.WORD_SEPARATOR + randomToken(random);
+			analyzedEntries[i] = analyzed;
+			builder.add(new CharsRef(analyzed + CcWordSet.WORD_END), new CharsRef(analyzed.replace(CcWordSet.WORD_SEPARATOR, ' ')));
+		}
+		CcWordSet wordSet = builder.build();
+		Arrays.sort(analyzedEntries);
+		System.out.println("fst ramBytesUsed=" + wordSet.fst.ramBytesUsed());
+
+		String[] prefixes = new String[queryCount];
+		for (int i = 0; i < queryCount; ++i) {
+			String entry = analyzedEntries[random.nextInt(entryCount)];
+			prefixes[i] = entry.substring(0, 1 + random.nextInt(entry.length()));
+		}
+
+		CcWordCompleter completer = new CcWordCompleter(wordSet);
+		int[] ords = new int[maxCount];
+		long[] latencies = new long[queryCount];
+		long checksum = 0;
+		for (int round = 0; round < 3; ++round) {
+			for (int i = 0; i < queryCount; ++i) {
+				long start = System.nanoTime();
+				checksum += completer.complete(prefixes[i], ords, maxCount);
+				latencies[i] = System.nanoTime() - start;
+			}
+		}
+		report("fst", latencies);
+
+		// 朴素扫描太慢，只取部分查询
+		int naiveQueryCount = Math.max(1, queryCount / 100);
+		long[] naiveLatencies = new long[naiveQueryCount];
+		for (int i = 0; i < naiveQueryCount; ++i) {
+			long start = System.nanoTime();
+			int count = 0;
+			for (int j = 0; j < entryCount && count < maxCount; ++j) {
+				if (analyzedEntries[j].startsWith(prefixes[i])) {
+					count++;
+				}
+			}
+			checksum += count;
+			naiveLatencies[i] = System.nanoTime() - start;
+		}
+		report("naive scan", naiveLatencies);
+		System.out.println("checksum=" + checksum);
+	}
+
+	private static String randomToken(Random random) {
+		int length = 1 + random.nextInt(6);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	private static void report(String name, long[] latencies) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		System.out.println(name + ": p50=" + micros(sorted, 0.50) + "us, p99=" + micros(sorted, 0.99) + "us, max=" + micros(sorted, 1.0)
+				+ "us");
+	}
+
+	private static double micros(long[] sorted, double quantile) {
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1000.0;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CcWordSetTest {
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void testComplete() throws IOException {
+		final String[] words = { "U", "U盘", "AU", "USB", "U盘 套" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		CcWordCompleter completer = new CcWordCompleter(wordSet);
+		assertThat(completer.completeWords("u", 10), contains("U盘 套", "U盘", "U", "USB"));
+		assertThat(completer.completeWords("u" + CcWordSet.WORD_SEPARATOR, 10), contains("U盘 套", "U盘"));
+		assertThat(completer.completeWords("us", 10), contains("USB"));
+		assertThat(completer.completeWords("u", 2), contains("U盘 套", "U盘"));
+		assertThat(completer.completeWords("", 10), contains("AU", "U盘 套", "U盘", "U", "USB"));
+		assertThat(completer.completeWords("x", 10), empty());
+		assertThat(completer.completeWords("usb", 10), contains("USB"));
+	}
+
+	@Test
+	public void testFindFirstMatch() throws IOException {
+		final String[] words = { "U盘", "好 东西", "移动 硬盘", "硬盘 是 好", "AU" };
+		final String[] texts = { "u盘是个好东西", "我的移动硬盘是好东西", "A U 盘", "没有匹配的文本", "移动，硬盘", "" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		CcArgs args = new CcArgs(wordSet, true);
+		CcWordFinder finder = new CcWordFinder(args);
+		Analyzer wordSetAnalyzer = AnalysisTestHelper.createWordSetAnalyzer();
+		Analyzer ccAnalyzer = AnalysisTestHelper.createCcAnalyzer(args);
+		for (String text : texts) {
+			String expected = firstCcToken(ccAnalyzer, text);
+			String actual = finder.find(wordSetAnalyzer, text) ? finder.matchWord() + "/" + finder.matchStartOffset() + "-"
+					+ finder.matchEndOffset() : null;
+			assertThat(text, actual, equalTo(expected));
+		}
+
+		assertThat(finder.find(wordSetAnalyzer, "我的移动硬盘是好东西"), equalTo(true));
+		assertThat(finder.matchWord(), equalTo("移动 硬盘"));
+		assertThat(finder.find(wordSetAnalyzer, "没有"), equalTo(false));
+		assertThat(finder.matchOrd(), equalTo(-1));
+	}
+
+	@Test
+	public void testStats() throws IOException {
+		final String[] words = { "U", "U盘", "AU", "USB", "U盘 套", "u 盘 套 装", "移动 硬盘", "移动 电源" };
+
+		CcWordSetStats stats = CcWordSetStats.compute(AnalysisTestHelper.createWordSet(words), 2);
+		assertThat(stats.getEntryCount(), equalTo(8));
+		assertThat(stats.getMaxTokensPerEntry(), equalTo(4));
+		assertThat(stats.getEntriesWithTokens(1), equalTo(3));
+		assertThat(stats.getEntriesWithTokens(4), equalTo(3));
+		assertThat(stats.getSingleTokenEntries(), equalTo(3));
+		assertThat(stats.getSingleTokenPrefixEntries(), equalTo(1));
+		assertThat(stats.getPrefixEntries(), equalTo(3));
+		assertThat(stats.getFirstTokenFanOut(), equalTo(4));
+		assertThat(stats.getPrefixCount(), equalTo(7));
+		// 没有前缀的后缀也是前缀，最多推进一个存活的匹配及一个新匹配
+		assertThat(stats.getWorstCaseActiveCursors(), equalTo(2));
+		assertThat(stats.getMaxFanOutPrefix().toString(), equalTo("移 动"));
+		assertThat(stats.getMaxFanOutPrefix().getFanOut(), equalTo(2));
+
+		assertThat(stats.getTopPrefixes().size(), equalTo(2));
+		CcWordSetStats.Prefix top = stats.getTopPrefixes().get(0);
+		assertThat(top.getTokens(), contains("u"));
+		assertThat(top.getExtensions(), equalTo(3));
+		assertThat(top.isEntry(), equalTo(true));
+		assertThat(stats.getTopPrefixes().get(1).toString(), equalTo("移 动"));
+	}
+
+	@Test
+	public void testStatsActiveCursors() throws IOException {
+		final String[] words = { "a b c d e", "b c x", "c y" };
+
+		CcWordSetStats stats = CcWordSetStats.compute(AnalysisTestHelper.createWordSet(words), 0);
+		assertThat(stats.getMaxTokensPerEntry(), equalTo(5));
+		// 读入“a b c”后，“a b c”、“b c”、“c”都仍在匹配，下一个Token还会开启一个新匹配
+		assertThat(stats.getWorstCaseActiveCursors(), equalTo(4));
+		assertThat(stats.getWorstCaseFstStepsPerToken(), equalTo(4L * 3));
+	}
+
+	@Test
+	public void testWarm() throws IOException {
+		final String[] words = { "U盘", "好 东西", "移动 硬盘", "硬盘 是 好", "AU" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		assertThat(wordSet.touch(), equalTo(wordSet.touch()));
+
+		Analyzer ccAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, true));
+		CcWarmer.Result result = new CcWarmer.Builder(ccAnalyzer, wordSet).addText("u盘是个好东西").maxRounds(20)
+				.maxTime(10, TimeUnit.SECONDS).build().warm();
+		assertThat(result.getRounds(), greaterThan(0));
+		assertThat(result.getRounds(), lessThanOrEqualTo(20));
+		// 每轮至少回放默认的10000个Token，样本再小也不会在编译前就判定为稳定
+		assertThat(result.getTokens(), greaterThanOrEqualTo(result.getRounds() * 10000L));
+		assertThat(result.getChecksum(), equalTo(wordSet.touch()));
+	}
+
+	@Test
+	public void testSharded() throws IOException {
+		final String[] words = { "U盘", "USB 3.0", "AU", "移动 硬盘", "移动 电源", "한국 어", "ｶﾒﾗ 包" };
+		final String[] texts = { "u盘是个好东西", "USB 3.0的移动硬盘和移动电源", "한국 어 AU", "A U 盘", "ｶﾒﾗ包", "" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		File dir = tempFolder.newFolder("shards");
+		CcShardedWordSet.write(wordSet, dir);
+		CcShardedWordSet shardedWordSet = CcShardedWordSet.open(dir, 1, TimeUnit.HOURS);
+		assertThat(shardedWordSet.size(), equalTo(words.length));
+		assertThat(shardedWordSet.loadedShards(), equalTo(0L));
+
+		for (boolean distinctWords : new boolean[] { false, true }) {
+			for (boolean mostTokens : new boolean[] { false, true }) {
+				Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens, null, distinctWords, null));
+				Analyzer shardedAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(shardedWordSet, mostTokens, null,
+						distinctWords, null));
+				for (String text : texts) {
+					assertThat(text, AnalysisTestHelper.tokenStrings(shardedAnalyzer, text),
+							equalTo(AnalysisTestHelper.tokenStrings(analyzer, text)));
+				}
+			}
+		}
+
+		shardedWordSet.evictAll();
+		Analyzer shardedAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(shardedWordSet, false, null, false, null));
+		AnalysisTestHelper.tokenStrings(shardedAnalyzer, "usb");
+		assertThat(shardedWordSet.loadedShards(), equalTo(1L));
+		AnalysisTestHelper.tokenStrings(shardedAnalyzer, "移动硬盘");
+		assertThat(shardedWordSet.loadedShards(), equalTo(2L));
+
+		// 被逐出的分片不能被复用的过滤器继续持有，否则重新加载后堆中会有两份
+		WeakReference<CcWordSet> evictedShard = new WeakReference<>(shardedWordSet.shard(shardedWordSet.shardOf('移')));
+		shardedWordSet.evictAll();
+		AnalysisTestHelper.tokenStrings(shardedAnalyzer, "usb");
+		for (int i = 0; i < 100 && evictedShard.get() != null; ++i) {
+			System.gc();
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		assertThat(evictedShard.get(), nullValue());
+	}
+
+	/** 结束位置最靠前的CC Token，结束位置相同时取开始位置最靠前的。 */
+	private static String firstCcToken(Analyzer analyzer, String text) throws IOException {
+		String first = null;
+		int firstStartOffset = Integer.MAX_VALUE;
+		int firstEndOffset = Integer.MAX_VALUE;
+		try (TokenStream ts = analyzer.tokenStream("", text)) {
+			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+			TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+			OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+			ts.reset();
+			while (ts.incrementToken()) {
+				if (!CcWordsFilter.TOKEN_TYPE.equals(typeAtt.type())) {
+					continue;
+				}
+				int startOffset = offsetAtt.startOffset();
+				int endOffset = offsetAtt.endOffset();
+				if (endOffset < firstEndOffset || endOffset == firstEndOffset && startOffset < firstStartOffset) {
+					first = termAtt + "/" + startOffset + "-" + endOffset;
+					firstStartOffset = startOffset;
+					firstEndOffset = endOffset;
+				}
+			}
+			ts.end();
+		}
+		return first;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015 thihy
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.thihy.analysis.cc;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 分词热路径的内存分配回归测试。预热后统计每个输出Token平均分配的字节数，超过 <code>cc-allocation-budgets.properties</code>
+ * 中记录的预算则失败。
+ * <p>
+ * 逃逸分析会消除部分分配，但其效果取决于JIT的内联决策，随运行顺序和时机而变化。因此pom.xml让此测试在单独的JVM中以
+ * <code>-XX:-DoEscapeAnalysis</code> 运行，测得的即是代码中实际的分配，结果是确定的，预算也按此设定。
+ * 每个场景仍测量多轮，取最小值与预算比较。若优化降低了分配，请同步收紧预算。
+ */
+public class CcWordsFilterAllocationTest {
+	private static final String BUDGETS_RESOURCE = "cc-allocation-budgets.properties";
+	private static final int WARM_UP_ROUNDS = 300;
+	private static final int MEASURE_ROUNDS = 5;
+	private static final int ITERATIONS_PER_ROUND = 50;
+
+	private static final String[] WORDS = { "U盘", "移动 硬盘", "USB 3.0", "固态 硬盘", "存储 卡", "读卡器", "数据 线", "好 东西" };
+	private static final String[] HIT_HEAVY_DOCS = { "U盘是个好东西，移动硬盘也是个好东西",
+			"USB 3.0的固态硬盘和存储卡都需要读卡器和数据线", "U盘 移动硬盘 固态硬盘 存储卡 读卡器 数据线 好东西 USB 3.0" };
+	private static final String[] MISS_HEAVY_DOCS = { "今天天气很好，我们一起去公园散步吧",
+			"The quick brown fox jumps over the lazy dog near the river bank", "春眠不觉晓，处处闻啼鸟。夜来风雨声，花落知多少。" };
+
+	private static com.sun.management.ThreadMXBean threadMXBean;
+	private static Properties budgets;
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		budgets = new Properties();
+		try (InputStream in = CcWordsFilterAllocationTest.class.getClassLoader().getResourceAsStream(BUDGETS_RESOURCE)) {
+			budgets.load(in);
+		}
+	}
+
+	@Test
+	public void testHitHeavyFewestTokens() throws IOException {
+		checkBudget("hitHeavy.fewestTokens", false, HIT_HEAVY_DOCS);
+	}
+
+	@Test
+	public void testHitHeavyMostTokens() throws IOException {
+		checkBudget("hitHeavy.mostTokens", true, HIT_HEAVY_DOCS);
+	}
+
+	@Test
+	public void testMissHeavyFewestTokens() throws IOException {
+		checkBudget("missHeavy.fewestTokens", false, MISS_HEAVY_DOCS);
+	}
+
+	@Test
+	public void testMissHeavyMostTokens() throws IOException {
+		checkBudget("missHeavy.mostTokens", true, MISS_HEAVY_DOCS);
+	}
+
+	private void checkBudget(String scenario, boolean mostTokens, String[] docs) throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(WORDS);
+		Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens));
+
+		for (int i = 0; i < WARM_UP_ROUNDS; ++i) {
+			consume(analyzer, docs);
+		}
+
+		long threadId = Thread.currentThread().getId();
+		double minBytesPerToken = Double.MAX_VALUE;
+		for (int round = 0; round < MEASURE_ROUNDS; ++round) {
+			long tokens = 0;
+			long before = threadMXBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < ITERATIONS_PER_ROUND; ++i) {
+				tokens += consume(analyzer, docs);
+			}
+			long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+			minBytesPerToken = Math.min(minBytesPerToken, (double) allocated / tokens);
+		}
+
+		String budgetValue = budgets.getProperty(scenario);
+		assertTrue("no budget for scenario " + scenario, budgetValue != null);
+		double budget = Double.parseDouble(budgetValue);
+		assertTrue(String.format("%s allocated %.1f bytes/token, budget is %.1f", scenario, minBytesPerToken, budget),
+				minBytesPerToken <= budget);
+	}
+
+	private static long consume(Analyzer analyzer, String[] docs) throws IOException {
+		long tokens = 0;
+		for (String doc : docs) {
+			try (TokenStream ts = analyzer.tokenStream("", doc)) {
+				ts.reset();
+				while (ts.incrementToken()) {
+					tokens++;
+				}
+				ts.end();
+			}
+		}
+		return tokens;
+	}
+}
@@ -16,18 +16,24 @@
 
 package com.thihy.analysis.cc;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.cjk.CJKWidthFilter;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
 import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
-import org.apache.lucene.util.CharsRef;
-import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.junit.Test;
 
 public class CcWordsFilterTest {
@@ -37,9 +43,9 @@ public class CcWordsFilterTest {
 		final String[] words = { "U", "U盘", "AU" };
 		final String[] texts = { "U盘", "u盘是个好东西", "A U 盘" };
 
-		CcWordSet wordSet = createWordSet(words);
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
 		CcArgs args = new CcArgs(wordSet, false);
-		Analyzer ccAnalyzer = createCcAnalyzer(args);
+		Analyzer ccAnalyzer = AnalysisTestHelper.createCcAnalyzer(args);
 		for (String text : texts) {
 			try (TokenStream ts = ccAnalyzer.tokenStream("", text)) {
 				System.out.println("=================================================================================");
@@ -50,71 +56,140 @@ public class CcWordsFilterTest {
 		}
 	}
 
-	private Analyzer createCcAnalyzer(final CcArgs args) {
-		return new Analyzer() {
+	@Test
+	public void testEndOfInputFlushesPendingMatches() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘", "U盘 套" });
+		Analyzer fewestAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false));
+		Analyzer mostAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, true));
+
+		assertThat(AnalysisTestHelper.tokenStrings(fewestAnalyzer, "u盘"), contains("U盘/CC/0-2/1/2", "盘/<IDEOGRAPHIC>/1-2/1/1", "end/2"));
+		assertThat(AnalysisTestHelper.tokenStrings(mostAnalyzer, "u盘"),
+				contains("u/<ALPHANUM>/0-1/1/1", "U盘/CC/0-2/1/2", "盘/<IDEOGRAPHIC>/1-2/1/1", "end/2"));
+	}
+
+	@Test
+	public void testDistinctWords() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "U盘", "好 东西", "移动 硬盘" });
+		Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false, null, true));
+
+		for (int round = 0; round < 2; ++round) {
+			List<String> tokens = new ArrayList<>();
+			try (TokenStream ts = analyzer.tokenStream("", "U盘是个好东西，u盘也是好东西，U盘")) {
+				CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+				OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+				CcTermFrequencyAttribute termFreqAtt = ts.addAttribute(CcTermFrequencyAttribute.class);
+				ts.reset();
+				while (ts.incrementToken()) {
+					tokens.add(termAtt + "/" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + "/" + termFreqAtt.getTermFrequency());
+				}
+				ts.end();
+			}
+			assertThat(tokens, contains("U盘/0-2/3", "好 东西/4-7/2"));
+		}
+	}
+
+	@Test
+	public void testSlowLog() throws IOException {
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(new String[] { "移动 硬盘", "移动 电源" });
+		CcSlowLog slowLog = new CcSlowLog.Builder().threshold(0, TimeUnit.NANOSECONDS).capacity(2).build();
+		Analyzer analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false, null, false, slowLog));
+		for (String text : new String[] { "好东西", "我的移动电源", "移动硬盘" }) {
+			AnalysisTestHelper.tokenStrings(analyzer, text);
+		}
+
+		final List<CcSlowLog.Sample> samples = new ArrayList<>();
+		CcSlowLog.Reporter reporter = new CcSlowLog.Reporter() {
+
+			@Override
+			public void report(CcSlowLog.Sample sample) {
+				samples.add(sample);
+			}
+		};
+		assertThat(slowLog.drain(reporter), equalTo(2));
+		assertThat(slowLog.getDropped(), equalTo(1L));
+		assertThat(slowLog.drain(reporter), equalTo(0));
+
+		CcSlowLog.Sample sample = samples.get(1);
+		assertThat(sample.getSequence(), equalTo(2L));
+		assertThat(sample.getExcerpt(), equalTo("移动硬盘"));
+		assertThat(sample.getInputTokens(), equalTo(4));
+		assertThat(sample.getCcTokens(), equalTo(1));
+		assertThat(sample.getHotPrefixes(), contains("移=3"));
+
+		CcSlowLog stepsSlowLog = new CcSlowLog.Builder().threshold(1, TimeUnit.HOURS).fstStepsThreshold(20).build();
+		analyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, false, null, false, stepsSlowLog));
+		AnalysisTestHelper.tokenStrings(analyzer, "好东西");
+		AnalysisTestHelper.tokenStrings(analyzer, "移动硬盘移动电源移动硬盘");
+		assertThat(stepsSlowLog.getRecorded(), equalTo(1L));
+	}
+
+	@Test
+	public void testFolding() throws IOException {
+		final String[] words = { "U", "U盘", "AU", "ｶﾒﾗ包" };
+		final String[] texts = { "U盘", "Ｕ盘是个好东西", "a Ｕ 盘", "カメラ包" };
+
+		CcWordSet wordSet = AnalysisTestHelper.createWordSet(words);
+		CcCodePointFolding folding = new CcCodePointFolding.Builder().lowerCase().width().build();
+		for (boolean mostTokens : new boolean[] { false, true }) {
+			Analyzer normalizingAnalyzer = AnalysisTestHelper.createCcAnalyzer(new CcArgs(wordSet, mostTokens));
+			Analyzer foldingAnalyzer = createFoldingCcAnalyzer(new CcArgs(wordSet, mostTokens, folding));
+			for (String text : texts) {
+				List<String> expected = ccTokens(AnalysisTestHelper.tokenStrings(normalizingAnalyzer, text));
+				assertThat(expected.isEmpty(), equalTo(false));
+				assertThat(ccTokens(AnalysisTestHelper.tokenStrings(foldingAnalyzer, text)), equalTo(expected));
+			}
+		}
+	}
+
+	@Test
+	public void testFoldingEqualsFilters() throws IOException {
+		CcCodePointFolding folding = new CcCodePointFolding.Builder().lowerCase().width().build();
+		Analyzer analyzer = new Analyzer() {
 
 			@Override
 			protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
-				StandardTokenizer tokenizer = new StandardTokenizer(reader);
+				KeywordTokenizer tokenizer = new KeywordTokenizer(reader);
 				TokenStream tokenStream = tokenizer;
 				tokenStream = new LowerCaseFilter(tokenStream);
 				tokenStream = new CJKWidthFilter(tokenStream);
-				tokenStream = new CcWordsFilter(tokenStream, args);
 				return new TokenStreamComponents(tokenizer, tokenStream);
 			}
 		};
-	}
-
-	private CcWordSet createWordSet(String[] words) throws IOException {
-		Analyzer analyzer = createWordSetAnalyzer();
-		CharsRefBuilder textCharsRefBuilder = new CharsRefBuilder();
-		CcWordSet.Builder ccWordSetBuilder = new CcWordSet.Builder();
-		for (String word : words) {
-			CharsRef charsRef = analyze(analyzer, word);
-			textCharsRefBuilder.clear();
-			textCharsRefBuilder.append(word);
-			ccWordSetBuilder.add(charsRef, textCharsRefBuilder.get());
+		for (int codePoint = 2; codePoint <= Character.MAX_VALUE; ++codePoint) {
+			if (Character.isSurrogate((char) codePoint)) {
+				continue;
+			}
+			String text = String.valueOf((char) codePoint);
+			try (TokenStream ts = analyzer.tokenStream("", text)) {
+				CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+				ts.reset();
+				ts.incrementToken();
+				assertThat("code point " + codePoint, String.valueOf((char) folding.fold(codePoint)), equalTo(termAtt.toString()));
+				ts.end();
+			}
 		}
-		return ccWordSetBuilder.build();
 	}
 
-	private Analyzer createWordSetAnalyzer() {
+	private Analyzer createFoldingCcAnalyzer(final CcArgs args) {
 		return new Analyzer() {
 
 			@Override
 			protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
 				StandardTokenizer tokenizer = new StandardTokenizer(reader);
 				TokenStream tokenStream = tokenizer;
-				tokenStream = new LowerCaseFilter(tokenStream);
-				tokenStream = new CJKWidthFilter(tokenStream);
+				tokenStream = new CcWordsFilter(tokenStream, args);
 				return new TokenStreamComponents(tokenizer, tokenStream);
 			}
 		};
 	}
 
-	private CharsRef analyze(Analyzer analyzer, String text) throws IOException {
-		CharsRefBuilder charsRefBuilder = new CharsRefBuilder();
-		try (TokenStream ts = analyzer.tokenStream("", text)) {
-			CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
-			PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
-			ts.reset();
-			while (ts.incrementToken()) {
-				int length = termAtt.length();
-				if (length == 0) {
-					throw new IllegalArgumentException("term: " + text + " analyzed to a zero-length token");
-				}
-				charsRefBuilder.grow(charsRefBuilder.length() + length + 1); /* current + word + separator */
-				if (charsRefBuilder.length() > 0) {
-					charsRefBuilder.append(CcWordSet.WORD_SEPARATOR);
-				}
-				charsRefBuilder.append(termAtt);
+	private static List<String> ccTokens(List<String> tokens) {
+		List<String> ccTokens = new ArrayList<>();
+		for (String token : tokens) {
+			if (token.contains("/" + CcWordsFilter.TOKEN_TYPE + "/")) {
+				ccTokens.add(token);
 			}
-			ts.end();
-		}
-		if (charsRefBuilder.length() == 0) {
-			return null;
 		}
-		charsRefBuilder.append(CcWordSet.WORD_END);
-		return charsRefBuilder.get();
+		return ccTokens;
 	}
 }